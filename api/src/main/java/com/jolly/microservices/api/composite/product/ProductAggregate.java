@@ -11,7 +11,19 @@ public record ProductAggregate(
         int weight,
         List<RecommendationSummary> recommendations,
         List<ReviewSummary> reviews,
-        ServiceAddresses serviceAddresses
+        ServiceAddresses serviceAddresses,
+        List<String> omittedSections
 ) {
     public ProductAggregate {}
+
+    public ProductAggregate(
+            int productId,
+            String name,
+            int weight,
+            List<RecommendationSummary> recommendations,
+            List<ReviewSummary> reviews,
+            ServiceAddresses serviceAddresses
+    ) {
+        this(productId, name, weight, recommendations, reviews, serviceAddresses, List.of());
+    }
 }
@@ -4,10 +4,14 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * @author jolly
  */
@@ -32,6 +36,42 @@ public interface ProductCompositeService {
     )
     Mono<ProductAggregate> getProduct(@PathVariable int productId);
 
+    @Operation(
+            summary =
+                    "${api.product-composite.get-composite-product-stream.description}",
+            description =
+                    "${api.product-composite.get-composite-product-stream.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description =
+                    "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "404", description = "${api.responseCodes.notFound.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+        }
+    )
+    @GetMapping(
+            value = "/product-composite/{productId}/stream",
+            produces = "application/json"
+    )
+    Flux<DataBuffer> getProductStream(@PathVariable int productId);
+
+    @Operation(
+            summary =
+                    "${api.product-composite.get-composite-products.description}",
+            description =
+                    "${api.product-composite.get-composite-products.notes}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description =
+                    "${api.responseCodes.ok.description}"),
+            @ApiResponse(responseCode = "400", description = "${api.responseCodes.badRequest.description}"),
+            @ApiResponse(responseCode = "422", description = "${api.responseCodes.unprocessableEntity.description}")
+        }
+    )
+    @GetMapping(
+            value = "/product-composite",
+            produces = "application/json"
+    )
+    Flux<ProductAggregate> getProducts(@RequestParam(value = "ids") List<Integer> productIds);
 
     @Operation(
             summary = "${api.product-composite.create-composite-product.description}",
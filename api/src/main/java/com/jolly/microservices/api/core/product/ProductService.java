@@ -1,8 +1,11 @@
 package com.jolly.microservices.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * @author jolly
  */
@@ -20,6 +23,18 @@ public interface ProductService {
     )
     Mono<Product> getProduct(@PathVariable int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/product?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the products found, products that are not found are left out
+     */
+    @GetMapping(
+            value = "/product",
+            produces = "application/json"
+    )
+    Flux<Product> getProducts(@RequestParam(value = "productIds") List<Integer> productIds);
+
     /**
      * Sample usage, see below.
      *
@@ -27,6 +42,8 @@ public interface ProductService {
      *   -H "Content-Type: application/json" --data \
      *   '{"productId":123,"name":"product 123","weight":123}'
      *
+     * A product with the productId of an existing product is left as is, so creating it again is a no-op.
+     *
      * @param body A JSON representation of the new product
      * @return A JSON representation of the newly created product
      */
@@ -37,6 +54,25 @@ public interface ProductService {
     )
     Mono<Product> createProduct(@RequestBody Product body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X POST $HOST:$PORT/product/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"name":"product 123","weight":123},{"productId":124,"name":"product 124","weight":124}]'
+     *
+     * Products with the productId of an existing product are left as is, so creating them again is a no-op.
+     *
+     * @param body A JSON array of the new products, written in one bulk operation
+     * @return the newly created products
+     */
+    @PostMapping(
+            value = "/product/bulk",
+            consumes = "application/json",
+            produces = "application/json"
+    )
+    Flux<Product> createProducts(@RequestBody List<Product> body);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/product/1".
      *
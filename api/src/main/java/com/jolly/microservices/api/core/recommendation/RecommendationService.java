@@ -22,6 +22,40 @@ public interface RecommendationService {
     )
     Flux<Recommendation> getRecommendations(@RequestParam(value = "productId") int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productId=1&limit=20&after=40".
+     * <p>
+     * Keyset pagination ordered by recommendationId: pass the recommendationId of the last recommendation of a page as after to get the next page.
+     *
+     * @param productId Id of the product
+     * @param after recommendationId to continue after, the first page is returned if left out
+     * @param limit Max number of recommendations to return
+     * @return a page of the recommendations of the product
+     */
+    @GetMapping(
+            value = "/recommendation",
+            params = "limit",
+            produces = "application/json"
+    )
+    Flux<Recommendation> getRecommendations(
+            @RequestParam(value = "productId") int productId,
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam(value = "limit") int limit
+    );
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/recommendation?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the recommendations of all the products
+     */
+    @GetMapping(
+            value = "/recommendation",
+            params = "productIds",
+            produces = "application/json"
+    )
+    Flux<Recommendation> getRecommendations(@RequestParam(value = "productIds") List<Integer> productIds);
+
     /**
      * Sample usage, see below.
      *
@@ -29,6 +63,8 @@ public interface RecommendationService {
      *   -H "Content-Type: application/json" --data \
      *   '{"productId":123,"recommendationId":456,"author":"me","rate":5,"content":"yada, yada, yada"}'
      *
+     * A recommendation with the productId and recommendationId of an existing recommendation is left as is, so creating it again is a no-op.
+     *
      * @param body A JSON representation of the new recommendation
      * @return A JSON representation of the newly created recommendation
      */
@@ -38,6 +74,24 @@ public interface RecommendationService {
             produces = "application/json")
     Mono<Recommendation> createRecommendation(@RequestBody Recommendation body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X POST $HOST:$PORT/recommendation/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"recommendationId":456,...},{"productId":123,"recommendationId":457,...}]'
+     *
+     * Recommendations with the productId and recommendationId of an existing recommendation are left as is, so creating them again is a no-op.
+     *
+     * @param body A JSON array of the new recommendations, written in one bulk operation
+     * @return the newly created recommendations
+     */
+    @PostMapping(
+            value    = "/recommendation/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    Flux<Recommendation> createRecommendations(@RequestBody List<Recommendation> body);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/recommendation?productId=1".
      *
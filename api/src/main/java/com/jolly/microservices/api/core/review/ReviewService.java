@@ -22,6 +22,40 @@ public interface ReviewService {
     )
     Flux<Review> getReviews(@RequestParam(value = "productId") int productId);
 
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productId=1&limit=20&after=40".
+     * <p>
+     * Keyset pagination ordered by reviewId: pass the reviewId of the last review of a page as after to get the next page.
+     *
+     * @param productId Id of the product
+     * @param after reviewId to continue after, the first page is returned if left out
+     * @param limit Max number of reviews to return
+     * @return a page of the reviews of the product
+     */
+    @GetMapping(
+            value = "/review",
+            params = "limit",
+            produces = "application/json"
+    )
+    Flux<Review> getReviews(
+            @RequestParam(value = "productId") int productId,
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam(value = "limit") int limit
+    );
+
+    /**
+     * Sample usage: "curl $HOST:$PORT/review?productIds=1,2,3".
+     *
+     * @param productIds Ids of the products
+     * @return the reviews of all the products
+     */
+    @GetMapping(
+            value = "/review",
+            params = "productIds",
+            produces = "application/json"
+    )
+    Flux<Review> getReviews(@RequestParam(value = "productIds") List<Integer> productIds);
+
     /**
      * Sample usage, see below.
      *
@@ -29,6 +63,8 @@ public interface ReviewService {
      *   -H "Content-Type: application/json" --data \
      *   '{"productId":123,"reviewId":456,"author":"me","subject":"yada, yada, yada","content":"yada, yada, yada"}'
      *
+     * A review with the productId and reviewId of an existing review is left as is, so creating it again is a no-op.
+     *
      * @param body A JSON representation of the new review
      * @return A JSON representation of the newly created review
      */
@@ -38,6 +74,24 @@ public interface ReviewService {
             produces = "application/json")
     Mono<Review> createReview(@RequestBody Review body);
 
+    /**
+     * Sample usage, see below.
+     *
+     * curl -X POST $HOST:$PORT/review/bulk \
+     *   -H "Content-Type: application/json" --data \
+     *   '[{"productId":123,"reviewId":456,...},{"productId":123,"reviewId":457,...}]'
+     *
+     * Reviews with the productId and reviewId of an existing review are left as is, so creating them again is a no-op.
+     *
+     * @param body A JSON array of the new reviews, written in one bulk operation
+     * @return the newly created reviews
+     */
+    @PostMapping(
+            value    = "/review/bulk",
+            consumes = "application/json",
+            produces = "application/json")
+    Flux<Review> createReviews(@RequestBody List<Review> body);
+
     /**
      * Sample usage: "curl -X DELETE $HOST:$PORT/review?productId=1".
      *
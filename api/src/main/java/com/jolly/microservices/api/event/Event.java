@@ -4,6 +4,8 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
 
 import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * @author jolly
@@ -11,28 +13,52 @@ import java.time.ZonedDateTime;
 public class Event<K, T> {
 
     public enum Type {
-        CREATE, DELETE
+        CREATE, DELETE, BULK_CREATE
     }
 
+    private final String eventId;
     private final Type eventType;
     private final K key;
     private final T data;
+    private final List<T> bulkData;
     private final ZonedDateTime eventCreatedAt;
 
     public Event() {
+        this.eventId = null;
         this.eventType = null;
         this.key = null;
         this.data = null;
+        this.bulkData = null;
         this.eventCreatedAt = null;
     }
 
     public Event(Type eventType, K key, T data) {
+        this(eventType, key, data, null);
+    }
+
+    private Event(Type eventType, K key, T data, List<T> bulkData) {
+        this.eventId = UUID.randomUUID().toString();
         this.eventType = eventType;
         this.key = key;
         this.data = data;
+        this.bulkData = bulkData;
         this.eventCreatedAt = ZonedDateTime.now();
     }
 
+    /**
+     * Creates a {@link Type#BULK_CREATE} event, creating all the entities in one message.
+     */
+    public static <K, T> Event<K, T> bulkCreate(K key, List<T> bulkData) {
+        return new Event<>(Type.BULK_CREATE, key, null, bulkData);
+    }
+
+    /**
+     * Unique id of the event, kept when the event is redelivered so consumers can drop duplicates.
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
     public Type getEventType() {
         return eventType;
     }
@@ -45,6 +71,10 @@ public class Event<K, T> {
         return data;
     }
 
+    public List<T> getBulkData() {
+        return bulkData;
+    }
+
     @JsonSerialize(using = ZonedDateTimeSerializer.class)
     public ZonedDateTime getEventCreatedAt() {
         return eventCreatedAt;
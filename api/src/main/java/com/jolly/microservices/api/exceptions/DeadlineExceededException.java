@@ -0,0 +1,20 @@
+package com.jolly.microservices.api.exceptions;
+
+/**
+ * @author jolly
+ */
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException() {}
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public DeadlineExceededException(Throwable cause) {
+        super(cause);
+    }
+}
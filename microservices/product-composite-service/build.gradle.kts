@@ -25,6 +25,7 @@ dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-actuator")
 	implementation("org.springframework.boot:spring-boot-starter-webflux")
 	implementation("org.springdoc:springdoc-openapi-starter-webflux-ui:${springdocVersion}")
+	implementation("com.github.ben-manes.caffeine:caffeine")
 
 	implementation("org.springframework.cloud:spring-cloud-starter-stream-rabbit")
 	implementation("org.springframework.cloud:spring-cloud-starter-stream-kafka")
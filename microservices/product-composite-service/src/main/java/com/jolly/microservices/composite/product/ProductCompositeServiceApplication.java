@@ -1,6 +1,7 @@
 package com.jolly.microservices.composite.product;
 
 import com.jolly.microservices.composite.product.services.ProductCompositeIntegration;
+import com.jolly.microservices.util.http.RequestDeadline;
 import io.swagger.v3.oas.models.ExternalDocumentation;
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.info.Contact;
@@ -18,6 +19,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.integration.channel.PublishSubscribeChannel;
+import org.springframework.messaging.SubscribableChannel;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.scheduler.Scheduler;
@@ -85,10 +88,18 @@ public class ProductCompositeServiceApplication {
 		return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "publish-pool");
 	}
 
+	/**
+	 * The results of Kafka sends, see the recordMetadataChannel of the kafka profile and {@code EventPublisher}.
+	 */
+	@Bean
+	public SubscribableChannel publishResults() {
+		return new PublishSubscribeChannel();
+	}
+
 	@Bean
 	@LoadBalanced
 	public WebClient.Builder loadBalancedWebClientBuilder() {
-		return WebClient.builder();
+		return WebClient.builder().filter(RequestDeadline.propagate());
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,42 @@
+package com.jolly.microservices.composite.product.services;
+
+import com.jolly.microservices.api.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.function.Consumer;
+
+/**
+ * @author jolly
+ */
+@Configuration
+public class CacheInvalidationConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheInvalidationConfig.class);
+
+    private final ProductAggregateCache productAggregateCache;
+
+    @Autowired
+    public CacheInvalidationConfig(ProductAggregateCache productAggregateCache) {
+        this.productAggregateCache = productAggregateCache;
+    }
+
+    /**
+     * Subscribes to the products, recommendations and reviews destinations without a consumer group,
+     * i.e. every composite instance sees every event and evicts its own cached aggregate.
+     */
+    @Bean
+    public Consumer<Event<Integer, Object>> productAggregateInvalidator() {
+        return event -> {
+            if (event.getKey() == null) {
+                LOG.warn("Ignores a {} event without key", event.getEventType());
+                return;
+            }
+
+            LOG.debug("Invalidate product aggregate on {} event for productId: {}", event.getEventType(), event.getKey());
+            productAggregateCache.evict(event.getKey());
+        };
+    }
+}
@@ -0,0 +1,285 @@
+package com.jolly.microservices.composite.product.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jolly.microservices.api.event.Event;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A file-backed transactional outbox for the events of the composite service.
+ * Events are appended to a JSON-lines log and a write completes once the event is on disk, a background relay
+ * then publishes the log to the broker in batches and records how far it got in an offset file.
+ * Events with the same binding and key are published in the order they were appended, and events that were
+ * not relayed before a crash are published when the service starts again, i.e. delivery is at-least-once.
+ * Lines of the log that can not be read as an event are moved to a quarantine file instead of blocking the relay.
+ * <p>
+ * The directory must be durable, e.g. a mounted volume, accepted events that are not relayed yet are lost with it.
+ * <p>
+ * All file access is done on one thread, which serializes appends with reading and compacting the log.
+ *
+ * @author jolly
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true")
+public class EventOutbox {
+    private static final Logger LOG = LoggerFactory.getLogger(EventOutbox.class);
+    private static final String LOG_FILE = "outbox.log";
+    private static final String OFFSET_FILE = "outbox.offset";
+    private static final String QUARANTINE_FILE = "outbox.quarantine";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private record OutboxEntry(String bindingName, Event<Object, Object> event) {}
+
+    private record Batch(List<OutboxEntry> entries, List<byte[]> unreadable, long endOffset) {}
+
+    private final EventPublisher eventPublisher;
+    private final ObjectMapper mapper;
+    private final int batchSize;
+    private final Path offsetFile;
+    private final Path quarantineFile;
+    private final FileChannel channel;
+    private final Scheduler fileScheduler = Schedulers.newSingle("outbox-file");
+    private final Counter relayedEvents;
+    private final Counter quarantinedLines;
+    private final Disposable relay;
+
+    // Byte position in the log of the first event that is not relayed yet
+    private volatile long offset;
+
+    @Autowired
+    public EventOutbox(
+            EventPublisher eventPublisher,
+            ObjectMapper mapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.outbox.directory:}") String directory,
+            @Value("${app.outbox.batchSize:500}") int batchSize,
+            @Value("${app.outbox.relayIntervalMillis:100}") long relayIntervalMillis
+    ) throws IOException {
+        if (directory.isBlank()) {
+            throw new IllegalStateException("app.outbox.directory must be set to a durable directory when the outbox is enabled");
+        }
+        LOG.info("Creates an event outbox in {} with batchSize = {}, relayIntervalMillis = {}", directory, batchSize, relayIntervalMillis);
+        this.eventPublisher = eventPublisher;
+        this.mapper = mapper;
+        this.batchSize = batchSize;
+
+        Path dir = Files.createDirectories(Path.of(directory));
+        this.offsetFile = dir.resolve(OFFSET_FILE);
+        this.quarantineFile = dir.resolve(QUARANTINE_FILE);
+        this.channel = FileChannel.open(dir.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+
+        Gauge.builder("outbox.pending.bytes", this, outbox -> outbox.pendingBytes())
+                .description("Size of the events in the outbox that are not relayed yet")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.relayedEvents = Counter.builder("outbox.relayed.events")
+                .description("Number of events relayed from the outbox to the broker")
+                .register(meterRegistry);
+        this.quarantinedLines = Counter.builder("outbox.quarantined.lines")
+                .description("Number of lines of the outbox that could not be read as an event and were quarantined")
+                .register(meterRegistry);
+
+        this.relay = Flux.interval(Duration.ofMillis(relayIntervalMillis), fileScheduler)
+                .onBackpressureDrop()
+                .concatMap(tick -> relay()
+                        .onErrorResume(error -> {
+                            LOG.warn("Failed to relay the outbox, will retry: {}", error.toString());
+                            return Mono.empty();
+                        }), 0)
+                .subscribe();
+    }
+
+    /**
+     * Appends an event to the outbox, the returned mono completes when the event is stored on disk.
+     */
+    public Mono<Void> append(String bindingName, Event<?, ?> event) {
+        return Mono.<Void>fromRunnable(() -> {
+                    try {
+                        byte[] line = (mapper.writeValueAsString(new OutboxEntry(bindingName, (Event<Object, Object>) event)) + "\n")
+                                .getBytes(StandardCharsets.UTF_8);
+                        ByteBuffer buffer = ByteBuffer.wrap(line);
+                        long position = channel.size();
+                        while (buffer.hasRemaining()) {
+                            position += channel.write(buffer, position);
+                        }
+                        channel.force(false);
+                    } catch (IOException ioex) {
+                        throw new UncheckedIOException(ioex);
+                    }
+                })
+                .subscribeOn(fileScheduler);
+    }
+
+    /**
+     * Publishes the next batch of events and moves the offset past them once all of them are published.
+     * Returns the number of relayed events.
+     */
+    public Mono<Integer> relay() {
+        return Mono.fromCallable(this::readBatch)
+                .subscribeOn(fileScheduler)
+                .filter(batch -> batch.endOffset() > offset)
+                .flatMap(batch -> publish(batch.entries())
+                        .then(Mono.fromRunnable(() -> commit(batch)).subscribeOn(fileScheduler))
+                        .thenReturn(batch.entries().size()))
+                .doOnNext(count -> {
+                    LOG.debug("Relayed {} events from the outbox", count);
+                    relayedEvents.increment(count);
+                })
+                .defaultIfEmpty(0);
+    }
+
+    private Mono<Void> publish(List<OutboxEntry> entries) {
+        // Events of one binding and key are published one after the other, different keys are published concurrently
+        Map<String, List<OutboxEntry>> byKey = new LinkedHashMap<>();
+        for (OutboxEntry entry : entries) {
+            byKey.computeIfAbsent(entry.bindingName() + "/" + entry.event().getKey(), k -> new ArrayList<>()).add(entry);
+        }
+
+        return Flux.fromIterable(byKey.values())
+                .flatMap(sameKey -> Flux.fromIterable(sameKey)
+                        .concatMap(entry -> eventPublisher.publish(entry.bindingName(), entry.event())))
+                .then();
+    }
+
+    private Batch readBatch() throws IOException {
+        List<OutboxEntry> entries = new ArrayList<>();
+        List<byte[]> unreadable = new ArrayList<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long position = offset;
+        long endOffset = offset;
+
+        while (entries.size() < batchSize && channel.read(buffer, position) > 0) {
+            buffer.flip();
+            position += buffer.remaining();
+            while (buffer.hasRemaining() && entries.size() < batchSize) {
+                byte b = buffer.get();
+                endOffset++;
+                if (b == '\n') {
+                    try {
+                        entries.add(mapper.readValue(line.toByteArray(), OutboxEntry.class));
+                    } catch (JsonProcessingException jpex) {
+                        LOG.warn("Quarantines a line of the outbox that is not an event: {}", jpex.getOriginalMessage());
+                        unreadable.add(line.toByteArray());
+                    }
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+            buffer.clear();
+        }
+
+        // An incomplete line is left for a later batch
+        return new Batch(entries, unreadable, endOffset - line.size());
+    }
+
+    private void commit(Batch batch) {
+        long newOffset = batch.endOffset();
+        try {
+            if (!batch.unreadable().isEmpty()) {
+                quarantine(batch.unreadable());
+            }
+            // Once everything is relayed the log is emptied, appends are done on this thread so none can be lost
+            if (newOffset == channel.size()) {
+                channel.truncate(0);
+                newOffset = 0;
+            }
+            Path tmp = offsetFile.resolveSibling(OFFSET_FILE + ".tmp");
+            Files.writeString(tmp, Long.toString(newOffset));
+            Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            offset = newOffset;
+        } catch (IOException ioex) {
+            throw new UncheckedIOException(ioex);
+        }
+    }
+
+    private void quarantine(List<byte[]> lines) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] line : lines) {
+            content.write(line);
+            content.write('\n');
+        }
+        try (FileChannel quarantine = FileChannel.open(quarantineFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toByteArray());
+            while (buffer.hasRemaining()) {
+                quarantine.write(buffer);
+            }
+            quarantine.force(false);
+        }
+        quarantinedLines.increment(lines.size());
+    }
+
+    private void recover() throws IOException {
+        long size = channel.size();
+        long savedOffset = Files.exists(offsetFile) ? Long.parseLong(Files.readString(offsetFile).trim()) : 0;
+
+        // The log was emptied but the service stopped before the offset file was written
+        offset = (savedOffset > size) ? 0 : savedOffset;
+
+        // Drop the tail of an append that did not complete before the service stopped
+        long end = size;
+        ByteBuffer b = ByteBuffer.allocate(1);
+        while (end > offset) {
+            b.clear();
+            channel.read(b, end - 1);
+            if (b.get(0) == '\n') {
+                break;
+            }
+            end--;
+        }
+        if (end < size) {
+            LOG.warn("Drops {} bytes of an incomplete event at the end of the outbox", size - end);
+            channel.truncate(end);
+        }
+        if (end > offset) {
+            LOG.info("Found {} bytes of events in the outbox that were not relayed, will relay them", end - offset);
+        }
+    }
+
+    private long pendingBytes() {
+        try {
+            return channel.size() - offset;
+        } catch (IOException ioex) {
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        relay.dispose();
+        fileScheduler.dispose();
+        channel.close();
+    }
+}
@@ -0,0 +1,262 @@
+package com.jolly.microservices.composite.product.services;
+
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.api.exceptions.EventProcessingException;
+import com.jolly.microservices.util.messaging.EventLatencyRecorder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes events with at most {@code app.publish.maxInFlight} messages waiting for the broker at a time.
+ * Events beyond the window wait for a place in it, without holding a thread, and are published as earlier ones are
+ * acknowledged, i.e. callers are slowed down instead of failed.
+ * <p>
+ * With {@code app.publish.confirms} set, a publish completes once the broker has acknowledged it. RabbitMQ confirms
+ * are correlated through {@link CorrelationData}. Kafka acknowledgements are correlated on the {@value #CORRELATION_HEADER}
+ * header: the binder sends the result of each send to the {@code publishResults} channel, failed sends to the error channel.
+ * Kafka producers send asynchronously, so Kafka events are sent on the calling thread. RabbitMQ writes to the socket,
+ * its events are sent on the publishEventScheduler.
+ *
+ * @author jolly
+ */
+@Component
+public class EventPublisher {
+    private static final Logger LOG = LoggerFactory.getLogger(EventPublisher.class);
+
+    static final String CORRELATION_HEADER = "publishCorrelationId";
+
+    private record Waiter(MonoSink<Permit> sink, Permit permit) {}
+
+    /**
+     * A place in the publish window, released once.
+     */
+    private final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                releasePermit();
+            }
+        }
+    }
+
+    private final StreamBridge streamBridge;
+    private final Scheduler publishEventScheduler;
+    private final boolean confirms;
+    private final boolean kafka;
+    private final Duration confirmTimeout;
+    private final MeterRegistry meterRegistry;
+    private final int maxInFlight;
+
+    private final Queue<Waiter> waiting = new ArrayDeque<>();
+    private final Map<String, CompletableFuture<Void>> pendingAcks = new ConcurrentHashMap<>();
+    private int inFlight;
+
+    @Autowired
+    public EventPublisher(
+            StreamBridge streamBridge,
+            @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
+            @Qualifier("publishResults") SubscribableChannel publishResults,
+            @Qualifier("errorChannel") SubscribableChannel errorChannel,
+            MeterRegistry meterRegistry,
+            @Value("${spring.cloud.stream.defaultBinder:rabbit}") String binder,
+            @Value("${app.publish.maxInFlight:64}") int maxInFlight,
+            @Value("${app.publish.confirms:true}") boolean confirms,
+            @Value("${app.publish.confirmTimeoutMillis:10000}") long confirmTimeoutMillis
+    ) {
+        LOG.info("Creates an event publisher for {} with maxInFlight = {}, confirms = {}, confirmTimeoutMillis = {}",
+                binder, maxInFlight, confirms, confirmTimeoutMillis);
+        this.streamBridge = streamBridge;
+        this.publishEventScheduler = publishEventScheduler;
+        this.confirms = confirms;
+        this.kafka = "kafka".equals(binder);
+        this.confirmTimeout = Duration.ofMillis(confirmTimeoutMillis);
+        this.meterRegistry = meterRegistry;
+        this.maxInFlight = maxInFlight;
+
+        if (kafka && confirms) {
+            publishResults.subscribe(message -> acknowledged(message, null));
+            errorChannel.subscribe(message -> {
+                if (message.getPayload() instanceof MessagingException failure && failure.getFailedMessage() != null) {
+                    acknowledged(failure.getFailedMessage(), failure);
+                }
+            });
+        }
+
+        Gauge.builder("events.publish.inflight", this, publisher -> publisher.inFlight())
+                .description("Number of published events waiting for the broker")
+                .register(meterRegistry);
+        Gauge.builder("events.publish.queued", this, publisher -> publisher.waiting())
+                .description("Number of events waiting for a place in the publish window")
+                .register(meterRegistry);
+    }
+
+    public Mono<Void> publish(String bindingName, Event<?, ?> event) {
+        return Mono.usingWhen(
+                acquire(),
+                permit -> send(bindingName, event),
+                permit -> Mono.fromRunnable(permit::release));
+    }
+
+    /**
+     * Emits a place in the window once one is free, waiting callers get places in the order they asked for them.
+     */
+    private Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Permit permit = new Permit();
+            Waiter waiter = new Waiter(sink, permit);
+            boolean granted;
+            synchronized (waiting) {
+                granted = inFlight < maxInFlight;
+                if (granted) {
+                    inFlight++;
+                } else {
+                    waiting.add(waiter);
+                }
+            }
+            if (granted) {
+                sink.success(permit);
+                return;
+            }
+            sink.onCancel(() -> {
+                boolean removed;
+                synchronized (waiting) {
+                    removed = waiting.remove(waiter);
+                }
+                if (!removed) {
+                    // Granted while being cancelled, pass the place on
+                    permit.release();
+                }
+            });
+        });
+    }
+
+    private void releasePermit() {
+        Waiter next;
+        synchronized (waiting) {
+            next = waiting.poll();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+        next.sink().success(next.permit());
+    }
+
+    private int inFlight() {
+        synchronized (waiting) {
+            return inFlight;
+        }
+    }
+
+    private int waiting() {
+        synchronized (waiting) {
+            return waiting.size();
+        }
+    }
+
+    private Mono<Void> send(String bindingName, Event<?, ?> event) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Mono<Void> sent = kafka
+                ? Mono.defer(() -> sendToKafka(bindingName, event))
+                : Mono.fromCallable(() -> sendToRabbit(bindingName, event))
+                        .subscribeOn(publishEventScheduler)
+                        .flatMap(this::awaitConfirm);
+
+        return sent
+                .timeout(confirmTimeout)
+                .doOnError(error -> LOG.warn("Failed to publish a {} event to {}: {}", event.getEventType(), bindingName, error.toString()))
+                .doFinally(signal -> sample.stop(Timer.builder("events.publish.confirm")
+                        .description("Time from publish until the broker has confirmed the event")
+                        .tag("binding", bindingName)
+                        .register(meterRegistry)));
+    }
+
+    private Mono<Void> sendToKafka(String bindingName, Event<?, ?> event) {
+        String correlationId = confirms ? UUID.randomUUID().toString() : null;
+        MessageBuilder<Event<?, ?>> builder = message(event);
+        if (correlationId == null) {
+            sendMessage(bindingName, builder.build());
+            return Mono.empty();
+        }
+
+        // Registered before sending, the acknowledgement may arrive before send returns
+        CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+        pendingAcks.put(correlationId, acknowledged);
+        return Mono.fromRunnable(() -> sendMessage(bindingName, builder.setHeader(CORRELATION_HEADER, correlationId).build()))
+                .then(Mono.fromFuture(acknowledged))
+                .doFinally(signal -> pendingAcks.remove(correlationId));
+    }
+
+    private CorrelationData sendToRabbit(String bindingName, Event<?, ?> event) {
+        CorrelationData correlation = confirms ? new CorrelationData(UUID.randomUUID().toString()) : null;
+        MessageBuilder<Event<?, ?>> builder = message(event);
+        if (correlation != null) {
+            builder.setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, correlation);
+        }
+        sendMessage(bindingName, builder.build());
+        return correlation;
+    }
+
+    private MessageBuilder<Event<?, ?>> message(Event<?, ?> event) {
+        return MessageBuilder.<Event<?, ?>>withPayload(event)
+                .setHeader("partitionKey", event.getKey())
+                .setHeader(EventLatencyRecorder.PUBLISHED_AT_HEADER, System.currentTimeMillis());
+    }
+
+    private void sendMessage(String bindingName, Message<Event<?, ?>> message) {
+        LOG.debug("Sending a {} message to {}", message.getPayload().getEventType(), bindingName);
+        if (!streamBridge.send(bindingName, message)) {
+            throw new EventProcessingException("Failed to send a message to " + bindingName);
+        }
+    }
+
+    private Mono<Void> awaitConfirm(CorrelationData correlation) {
+        return Mono.fromFuture(correlation.getFuture())
+                .flatMap(confirm -> confirm.isAck()
+                        ? Mono.<Void>empty()
+                        : Mono.error(new EventProcessingException("Event not confirmed by the broker: " + confirm.getReason())));
+    }
+
+    /**
+     * Completes the publish of a Kafka send result or failure, messages of other senders are ignored.
+     */
+    private void acknowledged(Message<?> message, Exception failure) {
+        Object correlationId = message.getHeaders().get(CORRELATION_HEADER);
+        CompletableFuture<Void> acknowledged = correlationId == null ? null : pendingAcks.remove(correlationId.toString());
+        if (acknowledged == null) {
+            return;
+        }
+        if (failure == null) {
+            acknowledged.complete(null);
+        } else {
+            acknowledged.completeExceptionally(new EventProcessingException("Event not acknowledged by Kafka: " + failure.getMessage()));
+        }
+    }
+}
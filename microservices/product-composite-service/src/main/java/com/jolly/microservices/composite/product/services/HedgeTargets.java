@@ -0,0 +1,57 @@
+package com.jolly.microservices.composite.product.services;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Sends the attempts of a hedged read, see {@link RequestHedger}, to different instances of a service.
+ * The instances are taken from discovery, the first attempts of consecutive reads go round robin over them
+ * and the hedge of a read goes to the instance after the one of its first attempt.
+ * <p>
+ * With fewer than two instances there is no other instance to hedge to, the read goes through the load balancer
+ * and its hedge completes empty, i.e. is not sent.
+ *
+ * @author jolly
+ */
+public class HedgeTargets {
+    private final ReactiveDiscoveryClient discoveryClient;
+    private final WebClient loadBalancedClient;
+    private final WebClient instanceClient;
+    private final AtomicInteger nextInstance = new AtomicInteger();
+
+    /**
+     * @param loadBalancedClient client resolving service ids through the load balancer
+     * @param instanceClient client calling the URL of an instance as is
+     */
+    public HedgeTargets(ReactiveDiscoveryClient discoveryClient, WebClient loadBalancedClient, WebClient instanceClient) {
+        this.discoveryClient = discoveryClient;
+        this.loadBalancedClient = loadBalancedClient;
+        this.instanceClient = instanceClient;
+    }
+
+    /**
+     * Returns the attempts of one read, the call is given the client and the base URL of the instance to send an attempt to.
+     */
+    public <T> Function<Integer, Mono<T>> attempts(String serviceId, BiFunction<WebClient, String, Mono<T>> call) {
+        int first = nextInstance.getAndIncrement();
+        Mono<List<ServiceInstance>> instances = discoveryClient.getInstances(serviceId).collectList().cache();
+
+        return attempt -> instances.flatMap(available -> {
+            if (available.size() < 2) {
+                return attempt == 0 ? call.apply(loadBalancedClient, "http://" + serviceId) : Mono.empty();
+            }
+            if (attempt >= available.size()) {
+                return Mono.empty();
+            }
+            ServiceInstance instance = available.get(Math.floorMod(first + attempt, available.size()));
+            return call.apply(instanceClient, instance.getUri().toString());
+        });
+    }
+}
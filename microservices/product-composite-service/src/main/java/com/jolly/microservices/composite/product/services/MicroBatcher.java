@@ -0,0 +1,139 @@
+package com.jolly.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * DataLoader-style micro-batching: single-key loads that arrive within a short window, or until the batch is full,
+ * are sent downstream as one multi-key call and the result is split back out to the individual subscribers.
+ * Keys that are missing from the result complete empty.
+ *
+ * @author jolly
+ */
+public class MicroBatcher<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(MicroBatcher.class);
+
+    private final String operation;
+    private final Function<Set<K>, Mono<Map<K, V>>> batchLoader;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Scheduler scheduler = Schedulers.parallel();
+    private final DistributionSummary batchSizes;
+
+    private Map<K, List<Sinks.One<V>>> pending = new LinkedHashMap<>();
+    private Disposable scheduledFlush;
+
+    public MicroBatcher(
+            String operation,
+            Function<Set<K>, Mono<Map<K, V>>> batchLoader,
+            Duration window,
+            int maxBatchSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.operation = operation;
+        this.batchLoader = batchLoader;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+
+        this.batchSizes = DistributionSummary.builder("integration.batch.size")
+                .description("Number of keys sent in one batched downstream call")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        Gauge.builder("integration.batch.window", window, Duration::toMillis)
+                .description("Time a load waits for other loads to join its batch")
+                .baseUnit("milliseconds")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        Gauge.builder("integration.batch.max.size", () -> maxBatchSize)
+                .description("Number of keys that dispatches a batch before its window has passed")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> load(K key) {
+        return Mono.defer(() -> {
+            Sinks.One<V> sink = Sinks.one();
+            enqueue(key, sink);
+            return sink.asMono();
+        });
+    }
+
+    private void enqueue(K key, Sinks.One<V> sink) {
+        Map<K, List<Sinks.One<V>>> batch = null;
+
+        synchronized (this) {
+            pending.computeIfAbsent(key, k -> new ArrayList<>()).add(sink);
+            if (pending.size() >= maxBatchSize) {
+                batch = takePending();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        if (batch != null) {
+            dispatch(batch);
+        }
+    }
+
+    private void flush() {
+        Map<K, List<Sinks.One<V>>> batch;
+
+        synchronized (this) {
+            scheduledFlush = null;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+
+        dispatch(batch);
+    }
+
+    private Map<K, List<Sinks.One<V>>> takePending() {
+        Map<K, List<Sinks.One<V>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void dispatch(Map<K, List<Sinks.One<V>>> batch) {
+        LOG.debug("Dispatches a {} batch of {} keys", operation, batch.size());
+        batchSizes.record(batch.size());
+
+        Mono.defer(() -> batchLoader.apply(Set.copyOf(batch.keySet())))
+                .defaultIfEmpty(Map.of())
+                .subscribe(
+                        results -> batch.forEach((key, sinks) -> {
+                            V value = results.get(key);
+                            sinks.forEach(sink -> {
+                                if (value == null) {
+                                    sink.tryEmitEmpty();
+                                } else {
+                                    sink.tryEmitValue(value);
+                                }
+                            });
+                        }),
+                        error -> batch.values().forEach(sinks -> sinks.forEach(sink -> sink.tryEmitError(error)))
+                );
+    }
+}
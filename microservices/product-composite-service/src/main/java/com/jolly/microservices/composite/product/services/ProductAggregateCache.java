@@ -0,0 +1,157 @@
+package com.jolly.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.jolly.microservices.api.composite.product.ProductAggregate;
+import com.jolly.microservices.util.http.RequestDeadline;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * In-process cache of assembled product aggregates, bounded both in size and time.
+ * Entries are evicted when an event for the product is seen on one of the core service destinations.
+ * <p>
+ * The composite sees an event at about the time the core services do, i.e. possibly before they have applied it.
+ * An aggregate loaded shortly after an eviction may therefore still be the old one, it only lives for
+ * expireAfterInvalidationMillis instead of expireAfterWriteSeconds.
+ *
+ * @author jolly
+ */
+@Component
+public class ProductAggregateCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ProductAggregateCache.class);
+
+    private static final String CACHE_NAME = "productAggregate";
+
+    private final AsyncCache<Integer, ProductAggregate> cache;
+    private final Cache<Integer, Boolean> recentlyInvalidated;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterInvalidationNanos;
+    private final Counter invalidations;
+
+    @Autowired
+    public ProductAggregateCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.productAggregateCache.maximumSize:10000}") long maximumSize,
+            @Value("${app.productAggregateCache.expireAfterWriteSeconds:60}") long expireAfterWriteSeconds,
+            @Value("${app.productAggregateCache.expireAfterInvalidationMillis:5000}") long expireAfterInvalidationMillis
+    ) {
+        LOG.info("Creates a productAggregateCache with maximumSize = {}, expireAfterWriteSeconds = {}, expireAfterInvalidationMillis = {}",
+                maximumSize, expireAfterWriteSeconds, expireAfterInvalidationMillis);
+        this.expireAfterWriteNanos = Duration.ofSeconds(expireAfterWriteSeconds).toNanos();
+        this.expireAfterInvalidationNanos = Duration.ofMillis(expireAfterInvalidationMillis).toNanos();
+        this.recentlyInvalidated = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofMillis(expireAfterInvalidationMillis))
+                .build();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<Integer, ProductAggregate>() {
+                    @Override
+                    public long expireAfterCreate(Integer productId, ProductAggregate aggregate, long currentTime) {
+                        return timeToLive(productId);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Integer productId, ProductAggregate aggregate, long currentTime, long currentDuration) {
+                        return timeToLive(productId);
+                    }
+
+                    @Override
+                    public long expireAfterRead(Integer productId, ProductAggregate aggregate, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        this.invalidations = Counter.builder("cache.invalidations")
+                .description("Number of entries invalidated by product events")
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+    }
+
+    /**
+     * Returns the cached aggregate for the product, or loads it with the given loader.
+     * Concurrent callers for a product that is being loaded share the same load,
+     * failed loads and aggregates with omitted sections are not cached.
+     * The shared load runs without a request deadline, each caller waits for it until its own deadline.
+     *
+     * @param productId Id of the product
+     * @param loader function assembling the aggregate on a cache miss
+     * @return the product aggregate
+     */
+    public Mono<ProductAggregate> get(int productId, Function<Integer, Mono<ProductAggregate>> loader) {
+        // The loader runs detached from the subscriber, the context is passed on without the deadline of this caller
+        return RequestDeadline.apply(Mono.deferContextual(context -> {
+            CompletableFuture<ProductAggregate> future = cache.get(productId,
+                    (key, executor) -> loader.apply(key).contextWrite(withoutDeadline(context)).toFuture());
+            return Mono.fromFuture(future, true)
+                    .doOnNext(aggregate -> {
+                        if (isPartial(aggregate)) {
+                            cache.asMap().remove(productId, future);
+                        }
+                    });
+        }));
+    }
+
+    /**
+     * Returns the cached aggregates for the products, loading all missing ones with a single call to the loader.
+     *
+     * @param productIds Ids of the products
+     * @param loader function assembling the aggregates of the missing products
+     * @return the product aggregates keyed by productId, products that are not found are left out
+     */
+    public Mono<Map<Integer, ProductAggregate>> getAll(
+            Collection<Integer> productIds,
+            Function<Set<Integer>, Mono<Map<Integer, ProductAggregate>>> loader
+    ) {
+        return RequestDeadline.apply(Mono.deferContextual(context -> Mono.fromFuture(() -> cache.getAll(productIds,
+                        (keys, executor) -> loader.apply(Set.copyOf(keys)).contextWrite(withoutDeadline(context)).toFuture()), true))
+                .doOnNext(aggregates -> cache.synchronous().invalidateAll(aggregates.entrySet().stream()
+                        .filter(entry -> isPartial(entry.getValue()))
+                        .map(Map.Entry::getKey)
+                        .toList())));
+    }
+
+    private static Context withoutDeadline(ContextView context) {
+        return RequestDeadline.remove(Context.of(context));
+    }
+
+    /**
+     * Aggregates loaded while the product was recently invalidated may miss the write that invalidated them.
+     */
+    private long timeToLive(int productId) {
+        return recentlyInvalidated.getIfPresent(productId) != null ? expireAfterInvalidationNanos : expireAfterWriteNanos;
+    }
+
+    private boolean isPartial(ProductAggregate aggregate) {
+        return aggregate.omittedSections() != null && !aggregate.omittedSections().isEmpty();
+    }
+
+    public void evict(int productId) {
+        LOG.debug("Evicts the cached product aggregate for productId: {}", productId);
+        recentlyInvalidated.put(productId, Boolean.TRUE);
+        cache.synchronous().invalidate(productId);
+        invalidations.increment();
+    }
+}
@@ -0,0 +1,142 @@
+package com.jolly.microservices.composite.product.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jolly.microservices.api.composite.product.RecommendationSummary;
+import com.jolly.microservices.api.composite.product.ReviewSummary;
+import com.jolly.microservices.api.composite.product.ServiceAddresses;
+import com.jolly.microservices.api.core.product.Product;
+import com.jolly.microservices.api.core.recommendation.Recommendation;
+import com.jolly.microservices.api.core.review.Review;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a product aggregate as JSON one part at a time, in the same shape as {@code ProductAggregate}.
+ * The product header is written first, then every recommendation and review summary as it arrives,
+ * and the service addresses last, since the addresses of the core services are only known once they have answered.
+ * Sections that failed or were cut short by their budget are listed in {@code omittedSections}, with the parts of them
+ * already written kept, since they can no longer be taken back.
+ * <p>
+ * A writer holds the state of one response and must be called serially, in the order the parts are written, except
+ * for {@link #omit(String)}.
+ *
+ * @author jolly
+ */
+public class ProductAggregateStreamWriter {
+    private enum Section { START, RECOMMENDATIONS, REVIEWS, END }
+
+    private final String compositeAddress;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final JsonGenerator generator;
+
+    private Section section = Section.START;
+    private String productAddress = "";
+    private String recommendationAddress = "";
+    private String reviewAddress = "";
+    private final Set<String> omittedSections = Collections.synchronizedSet(new LinkedHashSet<>());
+
+    public ProductAggregateStreamWriter(ObjectMapper mapper, String compositeAddress) {
+        this.compositeAddress = compositeAddress;
+        try {
+            this.generator = mapper.getFactory().createGenerator(out);
+        } catch (IOException ioex) {
+            throw new UncheckedIOException(ioex);
+        }
+    }
+
+    /**
+     * Writes the next part of the aggregate, a product followed by its recommendations and then its reviews.
+     */
+    public DataBuffer write(Object part) {
+        try {
+            if (part instanceof Product product) {
+                writeHeader(product);
+            } else if (part instanceof Recommendation r) {
+                if (recommendationAddress.isEmpty()) {
+                    recommendationAddress = r.serviceAddress();
+                }
+                generator.writeObject(new RecommendationSummary(r.recommendationId(), r.author(), r.rate(), r.content()));
+            } else if (part instanceof Review r) {
+                startReviews();
+                if (reviewAddress.isEmpty()) {
+                    reviewAddress = r.serviceAddress();
+                }
+                generator.writeObject(new ReviewSummary(r.reviewId(), r.author(), r.subject(), r.content()));
+            } else {
+                throw new IllegalArgumentException("Unexpected part of a product aggregate: " + part);
+            }
+            return drain();
+        } catch (IOException ioex) {
+            throw new UncheckedIOException(ioex);
+        }
+    }
+
+    /**
+     * Lists a section as omitted in the aggregate, may be called from any thread before {@link #finish()}.
+     */
+    public void omit(String section) {
+        omittedSections.add(section);
+    }
+
+    /**
+     * Closes the open arrays and writes the service addresses, the last part of the aggregate.
+     */
+    public DataBuffer finish() {
+        try {
+            startReviews();
+            generator.writeEndArray();
+            generator.writeObjectField("serviceAddresses",
+                    new ServiceAddresses(compositeAddress, productAddress, reviewAddress, recommendationAddress));
+            generator.writeArrayFieldStart("omittedSections");
+            for (String omitted : List.copyOf(omittedSections)) {
+                generator.writeString(omitted);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            section = Section.END;
+            return drain();
+        } catch (IOException ioex) {
+            throw new UncheckedIOException(ioex);
+        }
+    }
+
+    private void writeHeader(Product product) throws IOException {
+        if (section != Section.START) {
+            throw new IllegalStateException("The product header must be written first");
+        }
+
+        productAddress = product.serviceAddress();
+        generator.writeStartObject();
+        generator.writeNumberField("productId", product.productId());
+        generator.writeStringField("name", product.name());
+        generator.writeNumberField("weight", product.weight());
+        generator.writeArrayFieldStart("recommendations");
+        section = Section.RECOMMENDATIONS;
+    }
+
+    private void startReviews() throws IOException {
+        if (section == Section.RECOMMENDATIONS) {
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("reviews");
+            section = Section.REVIEWS;
+        } else if (section != Section.REVIEWS) {
+            throw new IllegalStateException("Reviews can only follow the product header, in section: " + section);
+        }
+    }
+
+    private DataBuffer drain() throws IOException {
+        generator.flush();
+        byte[] bytes = out.toByteArray();
+        out.reset();
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+}
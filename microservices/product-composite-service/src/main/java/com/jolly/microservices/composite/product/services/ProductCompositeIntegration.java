@@ -11,26 +11,32 @@ import com.jolly.microservices.api.event.Event;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
 import com.jolly.microservices.api.exceptions.NotFoundException;
 import com.jolly.microservices.util.http.HttpErrorInfo;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
-import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
 import org.springframework.http.HttpStatus;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Scheduler;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 /**
  * @author jolly
@@ -43,104 +49,282 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     private static final String RECOMMENDATION_SERVICE_URL = "http://recommendation";
     private static final String REVIEW_SERVICE_URL = "http://review";
 
-    private final Scheduler publishEventScheduler;
     private final WebClient webClient;
     private final ObjectMapper mapper;
-    private final StreamBridge streamBridge;
+    private final EventPublisher eventPublisher;
+    private final Optional<EventOutbox> eventOutbox;
+
+    private final RequestCoalescer<Integer, Product> productRequests;
+    private final RequestCoalescer<Integer, List<Recommendation>> recommendationRequests;
+    private final RequestCoalescer<Integer, List<Review>> reviewRequests;
+
+    private final boolean batchingEnabled;
+    private final MicroBatcher<Integer, Product> productBatcher;
+    private final MicroBatcher<Integer, List<Recommendation>> recommendationBatcher;
+    private final MicroBatcher<Integer, List<Review>> reviewBatcher;
+
+    private final RequestHedger productHedger;
+    private final RequestHedger recommendationHedger;
+    private final RequestHedger reviewHedger;
+    private final Optional<HedgeTargets> hedgeTargets;
 
     @Autowired
     public ProductCompositeIntegration(
-            @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
             WebClient.Builder webClientBuilder,
             ObjectMapper mapper,
-            StreamBridge streamBridge
+            EventPublisher eventPublisher,
+            Optional<EventOutbox> eventOutbox,
+            MeterRegistry meterRegistry,
+            ReactiveDiscoveryClient discoveryClient,
+            @Value("${app.integration.batching.enabled:false}") boolean batchingEnabled,
+            @Value("${app.integration.batching.windowMillis:2}") long batchWindowMillis,
+            @Value("${app.integration.batching.maxBatchSize:50}") int maxBatchSize,
+            @Value("${app.integration.hedging.enabled:false}") boolean hedgingEnabled,
+            @Value("${app.integration.hedging.percentile:0.95}") double hedgingPercentile,
+            @Value("${app.integration.hedging.minDelayMillis:10}") long hedgingMinDelayMillis
     ) {
         this.webClient = webClientBuilder.build();
 
-        this.publishEventScheduler = publishEventScheduler;
         this.mapper = mapper;
-        this.streamBridge = streamBridge;
+        this.eventPublisher = eventPublisher;
+        this.eventOutbox = eventOutbox;
+
+        this.productRequests = new RequestCoalescer<>("getProduct", meterRegistry);
+        this.recommendationRequests = new RequestCoalescer<>("getRecommendations", meterRegistry);
+        this.reviewRequests = new RequestCoalescer<>("getReviews", meterRegistry);
+
+        LOG.info("Creates integration with batching enabled = {}, windowMillis = {}, maxBatchSize = {}", batchingEnabled, batchWindowMillis, maxBatchSize);
+        Duration batchWindow = Duration.ofMillis(batchWindowMillis);
+        this.batchingEnabled = batchingEnabled;
+        this.productBatcher = new MicroBatcher<>("getProduct", this::fetchProductBatch, batchWindow, maxBatchSize, meterRegistry);
+        this.recommendationBatcher = new MicroBatcher<>("getRecommendations", this::fetchRecommendationBatch, batchWindow, maxBatchSize, meterRegistry);
+        this.reviewBatcher = new MicroBatcher<>("getReviews", this::fetchReviewBatch, batchWindow, maxBatchSize, meterRegistry);
+
+        LOG.info("Creates integration with hedging enabled = {}, percentile = {}, minDelayMillis = {}", hedgingEnabled, hedgingPercentile, hedgingMinDelayMillis);
+        Duration hedgingMinDelay = Duration.ofMillis(hedgingMinDelayMillis);
+        this.productHedger = new RequestHedger("getProduct", hedgingEnabled, hedgingPercentile, hedgingMinDelay, meterRegistry);
+        this.recommendationHedger = new RequestHedger("getRecommendations", hedgingEnabled, hedgingPercentile, hedgingMinDelay, meterRegistry);
+        this.reviewHedger = new RequestHedger("getReviews", hedgingEnabled, hedgingPercentile, hedgingMinDelay, meterRegistry);
+        this.hedgeTargets = hedgingEnabled
+                ? Optional.of(new HedgeTargets(discoveryClient, webClient, instanceClient(webClientBuilder)))
+                : Optional.empty();
     }
 
     @Override
     public Mono<Product> createProduct(Product body) {
-        return Mono.fromCallable(() -> {
-            sendMessage("products-out-0", new Event<>(Event.Type.CREATE, body.productId(), body));
-            return body;
-        }).subscribeOn(publishEventScheduler);
+        return publish("products-out-0", new Event<>(Event.Type.CREATE, body.productId(), body))
+                .thenReturn(body);
+    }
+
+    @Override
+    public Flux<Product> createProducts(List<Product> body) {
+        // Products have different keys, i.e. one event per product
+        return Flux.fromIterable(body).concatMap(this::createProduct);
     }
 
     @Override
     public Mono<Product> getProduct(int productId) {
-        String url = PRODUCT_SERVICE_URL.concat("/product/").concat(String.valueOf(productId));
+        return productRequests.execute(productId, this::fetchProduct);
+    }
+
+    private Mono<Product> fetchProduct(int productId) {
+        // Invalid ids are sent on their own to get the error response of the product service back
+        if (batchingEnabled && productId > 0) {
+            return productBatcher.load(productId)
+                    .switchIfEmpty(Mono.error(() -> new NotFoundException("No product found for productId: " + productId)));
+        }
+
+        String path = "/product/".concat(String.valueOf(productId));
+
+        return productHedger.execute(attempts("product", (client, baseUrl) -> client.get()
+                .uri(baseUrl.concat(path)).retrieve()
+                .bodyToMono(Product.class)
+                .log(LOG.getName(), Level.FINE)
+                .onErrorMap(WebClientResponseException.class, this::handleException)));
+    }
+
+    private Mono<Map<Integer, Product>> fetchProductBatch(Set<Integer> productIds) {
+        return getProducts(List.copyOf(productIds)).collectMap(Product::productId);
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        String url = PRODUCT_SERVICE_URL.concat("/product?productIds=").concat(joinIds(productIds));
 
         return webClient.get()
                 .uri(url).retrieve()
-                .bodyToMono(Product.class)
+                .bodyToFlux(Product.class)
                 .log(LOG.getName(), Level.FINE)
                 .onErrorMap(WebClientResponseException.class, this::handleException);
     }
 
     @Override
     public Mono<Void> deleteProduct(int productId) {
-        return Mono.fromRunnable(() -> sendMessage("products-out-0", new Event<>(Event.Type.DELETE, productId, null)))
-                .subscribeOn(publishEventScheduler).then();
+        return publish("products-out-0", new Event<>(Event.Type.DELETE, productId, null));
     }
 
     @Override
     public Mono<Recommendation> createRecommendation(Recommendation body) {
-        return Mono.fromCallable(() -> {
-            sendMessage("recommendations-out-0", new Event<>(Event.Type.CREATE, body.productId(), body));
-            return body;
-        }).subscribeOn(publishEventScheduler);
+        return publish("recommendations-out-0", new Event<>(Event.Type.CREATE, body.productId(), body))
+                .thenReturn(body);
+    }
+
+    @Override
+    public Flux<Recommendation> createRecommendations(List<Recommendation> body) {
+        return publish("recommendations-out-0", Event.bulkCreate(body.get(0).productId(), body))
+                .thenMany(Flux.fromIterable(body));
     }
 
     @Override
     public Flux<Recommendation> getRecommendations(int productId) {
-        String url = RECOMMENDATION_SERVICE_URL.concat("/recommendation?productId=").concat(String.valueOf(productId));
+        return recommendationRequests.execute(productId, this::fetchRecommendations)
+                .flatMapIterable(recommendations -> recommendations);
+    }
+
+    private Mono<List<Recommendation>> fetchRecommendations(int productId) {
+        if (batchingEnabled && productId > 0) {
+            return recommendationBatcher.load(productId).defaultIfEmpty(List.of());
+        }
+
+        // Errors are passed on, so the composite service can tell a failed section from one without recommendations
+        return recommendationHedger.execute(attempts("recommendation",
+                (client, baseUrl) -> requestRecommendations(client, baseUrl, productId).collectList()));
+    }
+
+    /**
+     * Streams the recommendations of the product as they are decoded from the response of the recommendation service.
+     * Bypasses coalescing and batching, since both need the complete list in memory.
+     */
+    public Flux<Recommendation> streamRecommendations(int productId) {
+        // Errors are passed on, so the composite service can list a failed section as omitted
+        return requestRecommendations(webClient, RECOMMENDATION_SERVICE_URL, productId);
+    }
+
+    private Flux<Recommendation> requestRecommendations(WebClient client, String baseUrl, int productId) {
+        String url = baseUrl.concat("/recommendation?productId=").concat(String.valueOf(productId));
+
+        return client.get()
+                .uri(url).retrieve()
+                .bodyToFlux(Recommendation.class)
+                .log(LOG.getName(), Level.FINE)
+                .onErrorMap(WebClientResponseException.class, this::handleException);
+    }
+
+    private Mono<Map<Integer, List<Recommendation>>> fetchRecommendationBatch(Set<Integer> productIds) {
+        return getRecommendations(List.copyOf(productIds)).collect(Collectors.groupingBy(Recommendation::productId));
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(int productId, Integer after, int limit) {
+        String url = RECOMMENDATION_SERVICE_URL.concat("/recommendation?productId=").concat(String.valueOf(productId))
+                .concat(pageQuery(after, limit));
+
+        return webClient.get()
+                .uri(url).retrieve()
+                .bodyToFlux(Recommendation.class)
+                .log(LOG.getName(), Level.FINE)
+                .onErrorMap(WebClientResponseException.class, this::handleException);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(List<Integer> productIds) {
+        String url = RECOMMENDATION_SERVICE_URL.concat("/recommendation?productIds=").concat(joinIds(productIds));
 
-        // Return an empty result if something goes wrong to make it
-        // possible for the composite service to return partial responses
         return webClient.get()
                 .uri(url).retrieve()
                 .bodyToFlux(Recommendation.class)
                 .log(LOG.getName(), Level.FINE)
-                .onErrorResume(error -> Flux.empty());
+                .onErrorMap(WebClientResponseException.class, this::handleException);
     }
 
     @Override
     public Mono<Void> deleteRecommendations(int productId) {
-        return Mono.fromRunnable(() -> sendMessage("recommendations-out-0", new Event<>(Event.Type.DELETE, productId, null)))
-                .subscribeOn(publishEventScheduler).then();
+        return publish("recommendations-out-0", new Event<>(Event.Type.DELETE, productId, null));
     }
 
     @Override
     public Mono<Review> createReview(Review body) {
-        return Mono.fromCallable(() -> {
-            sendMessage("reviews-out-0", new Event<>(Event.Type.CREATE, body.productId(), body));
-            return body;
-        }).subscribeOn(publishEventScheduler);
+        return publish("reviews-out-0", new Event<>(Event.Type.CREATE, body.productId(), body))
+                .thenReturn(body);
+    }
+
+    @Override
+    public Flux<Review> createReviews(List<Review> body) {
+        return publish("reviews-out-0", Event.bulkCreate(body.get(0).productId(), body))
+                .thenMany(Flux.fromIterable(body));
     }
 
     @Override
     public Flux<Review> getReviews(int productId) {
-        String url = REVIEW_SERVICE_URL.concat("/review?productId=").concat(String.valueOf(productId));
+        return reviewRequests.execute(productId, this::fetchReviews)
+                .flatMapIterable(reviews -> reviews);
+    }
+
+    private Mono<List<Review>> fetchReviews(int productId) {
+        if (batchingEnabled && productId > 0) {
+            return reviewBatcher.load(productId).defaultIfEmpty(List.of());
+        }
+
+        // Errors are passed on, so the composite service can tell a failed section from one without reviews
+        return reviewHedger.execute(attempts("review",
+                (client, baseUrl) -> requestReviews(client, baseUrl, productId).collectList()));
+    }
+
+    /**
+     * Streams the reviews of the product as they are decoded from the response of the review service.
+     * Bypasses coalescing and batching, since both need the complete list in memory.
+     */
+    public Flux<Review> streamReviews(int productId) {
+        // Errors are passed on, so the composite service can list a failed section as omitted
+        return requestReviews(webClient, REVIEW_SERVICE_URL, productId);
+    }
+
+    private Flux<Review> requestReviews(WebClient client, String baseUrl, int productId) {
+        String url = baseUrl.concat("/review?productId=").concat(String.valueOf(productId));
+
+        LOG.debug("Will call the getReviews API on URL: {}", url);
+
+        return client.get()
+                .uri(url).retrieve()
+                .bodyToFlux(Review.class)
+                .log(LOG.getName(), Level.FINE)
+                .onErrorMap(WebClientResponseException.class, this::handleException);
+    }
+
+    private Mono<Map<Integer, List<Review>>> fetchReviewBatch(Set<Integer> productIds) {
+        return getReviews(List.copyOf(productIds)).collect(Collectors.groupingBy(Review::productId));
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, Integer after, int limit) {
+        String url = REVIEW_SERVICE_URL.concat("/review?productId=").concat(String.valueOf(productId))
+                .concat(pageQuery(after, limit));
+
+        LOG.debug("Will call the getReviews API on URL: {}", url);
+
+        return webClient.get()
+                .uri(url).retrieve()
+                .bodyToFlux(Review.class)
+                .log(LOG.getName(), Level.FINE)
+                .onErrorMap(WebClientResponseException.class, this::handleException);
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds) {
+        String url = REVIEW_SERVICE_URL.concat("/review?productIds=").concat(joinIds(productIds));
 
         LOG.debug("Will call the getReviews API on URL: {}", url);
 
-        // Return an empty result if something goes wrong to make it possible
-        // for the composite service to return partial responses
         return webClient.get()
                 .uri(url).retrieve()
                 .bodyToFlux(Review.class)
                 .log(LOG.getName(), Level.FINE)
-                .onErrorResume(error -> Flux.empty());
+                .onErrorMap(WebClientResponseException.class, this::handleException);
     }
 
     @Override
     public Mono<Void> deleteReviews(int productId) {
-        return Mono.fromRunnable(() -> sendMessage("reviews-out-0", new Event<>(Event.Type.DELETE, productId, null)))
-                .subscribeOn(publishEventScheduler).then();
+        return publish("reviews-out-0", new Event<>(Event.Type.DELETE, productId, null));
     }
 
     public Mono<Health> getProductHealth() {
@@ -164,12 +348,41 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
                 .log(LOG.getName(), Level.FINE);
     }
 
-    private void sendMessage(String bindingName, Event event) {
-        LOG.debug("Sending a {} message to {}", event.getEventType(), bindingName);
-        Message<Event> message = MessageBuilder.withPayload(event)
-                .setHeader("partitionKey", event.getKey())
+    /**
+     * A client with the configuration of the load-balanced one, i.e. its codecs, filters and observation, that calls
+     * the URL of an instance as is.
+     */
+    private static WebClient instanceClient(WebClient.Builder webClientBuilder) {
+        return webClientBuilder.clone()
+                .filters(filters -> filters.removeIf(filter -> filter instanceof LoadBalancedExchangeFilterFunction))
                 .build();
-        streamBridge.send(bindingName, message);
+    }
+
+    /**
+     * The attempts of a hedged read, without hedging the read has a single attempt sent through the load balancer.
+     */
+    private <T> Function<Integer, Mono<T>> attempts(String serviceId, BiFunction<WebClient, String, Mono<T>> call) {
+        return hedgeTargets
+                .map(targets -> targets.attempts(serviceId, call))
+                .orElseGet(() -> attempt -> call.apply(webClient, "http://" + serviceId));
+    }
+
+    private String joinIds(List<Integer> productIds) {
+        return productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    private String pageQuery(Integer after, int limit) {
+        String query = "&limit=" + limit;
+        return after == null ? query : query + "&after=" + after;
+    }
+
+    /**
+     * Sends the event to the outbox if enabled, i.e. the broker is not called in the request path.
+     */
+    private Mono<Void> publish(String bindingName, Event<?, ?> event) {
+        return eventOutbox
+                .map(outbox -> outbox.append(bindingName, event))
+                .orElseGet(() -> eventPublisher.publish(bindingName, event));
     }
 
     private Throwable handleException(Throwable ex) {
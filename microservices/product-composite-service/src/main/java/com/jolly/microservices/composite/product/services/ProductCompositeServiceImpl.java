@@ -1,19 +1,31 @@
 package com.jolly.microservices.composite.product.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jolly.microservices.api.composite.product.*;
 import com.jolly.microservices.api.core.product.Product;
 import com.jolly.microservices.api.core.recommendation.Recommendation;
 import com.jolly.microservices.api.core.review.Review;
+import com.jolly.microservices.api.exceptions.InvalidInputException;
 import com.jolly.microservices.api.exceptions.NotFoundException;
 import com.jolly.microservices.util.http.ServiceUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 
@@ -23,35 +35,161 @@ import java.util.stream.Collectors;
 @RestController
 public class ProductCompositeServiceImpl implements ProductCompositeService {
     private static final Logger LOG = LoggerFactory.getLogger(ProductCompositeServiceImpl.class);
+    private static final String RECOMMENDATIONS_SECTION = "recommendations";
+    private static final String REVIEWS_SECTION = "reviews";
+
     private final ServiceUtil serviceUtil;
     private final ProductCompositeIntegration integration;
+    private final ProductAggregateCache productAggregateCache;
+    private final int maxBatchSize;
+    private final ObjectMapper mapper;
+    private final int streamingPrefetch;
+    private final Duration recommendationsBudget;
+    private final Duration reviewsBudget;
+    private final Counter omittedRecommendations;
+    private final Counter omittedReviews;
 
     @Autowired
     public ProductCompositeServiceImpl(
             ServiceUtil serviceUtil,
-            ProductCompositeIntegration integration
+            ProductCompositeIntegration integration,
+            ProductAggregateCache productAggregateCache,
+            @Value("${app.maxBatchSize:100}") int maxBatchSize,
+            ObjectMapper mapper,
+            @Value("${app.streaming.prefetch:32}") int streamingPrefetch,
+            @Value("${app.sectionBudget.recommendationsMillis:1000}") long recommendationsBudgetMillis,
+            @Value("${app.sectionBudget.reviewsMillis:1000}") long reviewsBudgetMillis,
+            MeterRegistry meterRegistry
     ) {
         this.serviceUtil = serviceUtil;
         this.integration = integration;
+        this.productAggregateCache = productAggregateCache;
+        this.maxBatchSize = maxBatchSize;
+        this.mapper = mapper;
+        this.streamingPrefetch = streamingPrefetch;
+        this.recommendationsBudget = Duration.ofMillis(recommendationsBudgetMillis);
+        this.reviewsBudget = Duration.ofMillis(reviewsBudgetMillis);
+        this.omittedRecommendations = omittedSectionCounter(RECOMMENDATIONS_SECTION, meterRegistry);
+        this.omittedReviews = omittedSectionCounter(REVIEWS_SECTION, meterRegistry);
+    }
+
+    private static Counter omittedSectionCounter(String section, MeterRegistry meterRegistry) {
+        return Counter.builder("composite.section.omitted")
+                .description("Number of aggregates returned without a section that failed or was not back within its latency budget")
+                .tag("section", section)
+                .register(meterRegistry);
     }
 
     @Override
     public Mono<ProductAggregate> getProduct(int productId) {
         LOG.info("Will get composite product info for product.id={}", productId);
+        return productAggregateCache.get(productId, this::getProductAggregate)
+                .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    private Mono<ProductAggregate> getProductAggregate(int productId) {
+        LOG.debug("getCompositeProduct: cache miss, assembles the composite product for productId: {}", productId);
         return Mono.zip(
                 values -> createProductAggregate(
                         (Product) values[0],
-                        (List<Recommendation>) values[1],
-                        (List<Review>) values[2],
+                        ((Optional<List<Recommendation>>) values[1]).orElse(null),
+                        ((Optional<List<Review>>) values[2]).orElse(null),
                         serviceUtil.getServiceAddress()
                 ),
                 integration.getProduct(productId),
-                integration.getRecommendations(productId).collectList(),
-                integration.getReviews(productId).collectList())
-                .doOnError(ex -> LOG.warn("getCompositeProduct failed: {}", ex.toString()))
+                withinBudget(integration.getRecommendations(productId).collectList(), recommendationsBudget, omittedRecommendations),
+                withinBudget(integration.getReviews(productId).collectList(), reviewsBudget, omittedReviews));
+    }
+
+    /**
+     * Returns an empty optional if the section fails or is not back within its budget, i.e. the section is omitted.
+     */
+    private <T> Mono<Optional<T>> withinBudget(Mono<T> section, Duration budget, Counter omitted) {
+        return section.map(Optional::of)
+                .timeout(budget, Mono.fromSupplier(() -> {
+                    omitted.increment();
+                    return Optional.empty();
+                }))
+                .onErrorResume(error -> {
+                    LOG.warn("Omits a section that failed: {}", error.toString());
+                    omitted.increment();
+                    return Mono.just(Optional.empty());
+                });
+    }
+
+    /**
+     * Ends a streamed section if it fails or is not complete within its budget, and lists it as omitted. The parts of it
+     * already streamed stay in the response.
+     */
+    private <T> Flux<T> streamWithinBudget(Flux<T> section, String name, Duration budget, Counter omitted,
+                                           ProductAggregateStreamWriter writer) {
+        return section
+                .takeUntilOther(Mono.delay(budget).doOnNext(tick -> {
+                    LOG.warn("Cuts off the {} section, not complete within its budget of {}", name, budget);
+                    omitted.increment();
+                    writer.omit(name);
+                }))
+                .onErrorResume(error -> {
+                    LOG.warn("Omits a section that failed: {}", error.toString());
+                    omitted.increment();
+                    writer.omit(name);
+                    return Flux.empty();
+                });
+    }
+
+    @Override
+    public Flux<DataBuffer> getProductStream(int productId) {
+        LOG.info("Will stream composite product info for product.id={}", productId);
+
+        // All three calls are started at once, but the recommendations and reviews are only requested
+        // a prefetch at a time while the parts before them are written, which keeps memory use flat
+        ProductAggregateStreamWriter writer = new ProductAggregateStreamWriter(mapper, serviceUtil.getServiceAddress());
+        return Flux.<Object>mergeSequential(3, streamingPrefetch,
+                        integration.getProduct(productId),
+                        streamWithinBudget(integration.streamRecommendations(productId), RECOMMENDATIONS_SECTION,
+                                recommendationsBudget, omittedRecommendations, writer),
+                        streamWithinBudget(integration.streamReviews(productId), REVIEWS_SECTION,
+                                reviewsBudget, omittedReviews, writer))
+                .map(writer::write)
+                .concatWith(Mono.fromCallable(writer::finish))
+                .doOnError(ex -> LOG.warn("getCompositeProductStream failed: {}", ex.toString()))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    @Override
+    public Flux<ProductAggregate> getProducts(List<Integer> productIds) {
+        LOG.info("Will get composite product info for product.ids={}", productIds);
+
+        if (productIds.isEmpty() || productIds.size() > maxBatchSize) {
+            throw new InvalidInputException(String.format("Invalid number of productIds: %d, expected 1 to %d", productIds.size(), maxBatchSize));
+        }
+
+        List<Integer> distinctIds = productIds.stream().distinct().toList();
+        return productAggregateCache.getAll(distinctIds, this::getProductAggregates)
+                .flatMapIterable(aggregates -> distinctIds.stream()
+                        .map(aggregates::get)
+                        .filter(Objects::nonNull)
+                        .toList())
+                .doOnError(ex -> LOG.warn("getCompositeProducts failed: {}", ex.toString()))
                 .log(LOG.getName(), Level.FINE);
     }
 
+    private Mono<Map<Integer, ProductAggregate>> getProductAggregates(Set<Integer> productIds) {
+        LOG.debug("getCompositeProducts: cache miss, assembles the composite products for productIds: {}", productIds);
+        List<Integer> ids = List.copyOf(productIds);
+        return Mono.zip(
+                values -> createProductAggregates(
+                        (List<Product>) values[0],
+                        ((Optional<List<Recommendation>>) values[1]).orElse(null),
+                        ((Optional<List<Review>>) values[2]).orElse(null),
+                        serviceUtil.getServiceAddress()
+                ),
+                integration.getProducts(ids).collectList(),
+                withinBudget(integration.getRecommendations(ids).collectList(), recommendationsBudget, omittedRecommendations),
+                withinBudget(integration.getReviews(ids).collectList(), reviewsBudget, omittedReviews));
+    }
+
     @Override
     public Mono<Void> createProduct(ProductAggregate body) {
         try {
@@ -62,18 +200,23 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
             Product product = new Product(body.productId(), body.name(), body.weight(), null);
             monoList.add(integration.createProduct(product));
 
-            if (body.recommendations() != null) {
-                body.recommendations().forEach(r -> {
-                    Recommendation recommendation = new Recommendation(body.productId(), r.recommendationId(), r.author(), r.rate(), r.content(), null);
-                    monoList.add(integration.createRecommendation(recommendation));
-                });
+            // More than one recommendation or review is sent as one bulk event
+            if (body.recommendations() != null && !body.recommendations().isEmpty()) {
+                List<Recommendation> recommendations = body.recommendations().stream()
+                        .map(r -> new Recommendation(body.productId(), r.recommendationId(), r.author(), r.rate(), r.content(), null))
+                        .toList();
+                monoList.add(recommendations.size() == 1
+                        ? integration.createRecommendation(recommendations.get(0))
+                        : integration.createRecommendations(recommendations).collectList());
             }
 
-            if (body.reviews() != null) {
-                body.reviews().forEach(r -> {
-                    Review review = new Review(body.productId(), r.reviewId(), r.author(), r.subject(), r.content(), null);
-                    monoList.add(integration.createReview(review));
-                });
+            if (body.reviews() != null && !body.reviews().isEmpty()) {
+                List<Review> reviews = body.reviews().stream()
+                        .map(r -> new Review(body.productId(), r.reviewId(), r.author(), r.subject(), r.content(), null))
+                        .toList();
+                monoList.add(reviews.size() == 1
+                        ? integration.createReview(reviews.get(0))
+                        : integration.createReviews(reviews).collectList());
             }
 
             LOG.debug("createCompositeProduct: composite entities created for productId: {}", body.productId());
@@ -106,6 +249,30 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         }
     }
 
+    private Map<Integer, ProductAggregate> createProductAggregates(
+            List<Product> products,
+            List<Recommendation> recommendations,
+            List<Review> reviews,
+            String serviceAddr
+    ) {
+        // Omitted sections are null, and stay omitted in every aggregate
+        Map<Integer, List<Recommendation>> recommendationsByProduct = (recommendations == null) ? null : recommendations.stream()
+                .collect(Collectors.groupingBy(Recommendation::productId));
+        Map<Integer, List<Review>> reviewsByProduct = (reviews == null) ? null : reviews.stream()
+                .collect(Collectors.groupingBy(Review::productId));
+
+        return products.stream()
+                .collect(Collectors.toMap(
+                        Product::productId,
+                        p -> createProductAggregate(
+                                p,
+                                (recommendationsByProduct == null) ? null : recommendationsByProduct.getOrDefault(p.productId(), List.of()),
+                                (reviewsByProduct == null) ? null : reviewsByProduct.getOrDefault(p.productId(), List.of()),
+                                serviceAddr
+                        )
+                ));
+    }
+
     private ProductAggregate createProductAggregate(
             Product product,
             List<Recommendation> recommendations,
@@ -135,6 +302,15 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         String recommendationAddress = (recommendations != null && recommendations.size() > 0) ? recommendations.get(0).serviceAddress() : "";
         ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddr, productAddress, reviewAddress, recommendationAddress);
 
-        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+        // 5. Mark the sections that failed or were not back within their latency budget
+        List<String> omittedSections = new ArrayList<>();
+        if (recommendations == null) {
+            omittedSections.add(RECOMMENDATIONS_SECTION);
+        }
+        if (reviews == null) {
+            omittedSections.add(REVIEWS_SECTION);
+        }
+
+        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses, omittedSections);
     }
 }
@@ -0,0 +1,57 @@
+package com.jolly.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import com.jolly.microservices.util.http.RequestDeadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Single-flight deduplication of in-flight calls: concurrent callers for the same key share one call.
+ * The entry is cleared as soon as the shared call completes or fails, i.e. results are never cached.
+ * <p>
+ * The shared call runs without a request deadline, so it is not cut short by the deadline of whichever caller came first.
+ * Each caller waits for it until its own deadline, see {@link RequestDeadline#apply(Mono)}.
+ *
+ * @author jolly
+ */
+public class RequestCoalescer<K, V> {
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter calls;
+    private final Counter coalescedCalls;
+
+    public RequestCoalescer(String operation, MeterRegistry meterRegistry) {
+        this.calls = Counter.builder("integration.calls")
+                .description("Number of downstream calls made")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        this.coalescedCalls = Counter.builder("integration.calls.coalesced")
+                .description("Number of downstream calls saved by joining an in-flight call")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> execute(K key, Function<K, Mono<V>> call) {
+        return Mono.defer(() -> {
+            AtomicBoolean created = new AtomicBoolean(false);
+            Mono<V> shared = inFlight.computeIfAbsent(key, k -> {
+                created.set(true);
+                return call.apply(k)
+                        .contextWrite(RequestDeadline::remove)
+                        .doFinally(signal -> inFlight.remove(k))
+                        .cache();
+            });
+
+            if (created.get()) {
+                calls.increment();
+            } else {
+                coalescedCalls.increment();
+            }
+            return RequestDeadline.apply(shared);
+        });
+    }
+}
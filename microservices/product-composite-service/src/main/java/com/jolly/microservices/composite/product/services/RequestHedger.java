@@ -0,0 +1,103 @@
+package com.jolly.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Hedged requests for idempotent reads: if a call has not answered within the configured percentile of the
+ * observed latency, the same call is made once more and whichever returns a value first wins, the other one is cancelled.
+ * An error of one call does not win over a value of the other, an error of the first call before the hedge is sent
+ * ends the read.
+ * <p>
+ * The call is given the number of the attempt, 0 for the first call and 1 for the hedge, and is expected to send
+ * them to different instances, see {@link HedgeTargets}. A hedge that completes empty was not sent.
+ * <p>
+ * The hedge delay is computed from the latency of first attempts that answered, reads won by a hedge are left out
+ * since their latency is bounded by the delay itself and would pull it down.
+ *
+ * @author jolly
+ */
+public class RequestHedger {
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration minDelay;
+    private final Timer latency;
+    private final Counter calls;
+    private final Counter hedges;
+    private final Counter hedgeWins;
+
+    public RequestHedger(String operation, boolean enabled, double percentile, Duration minDelay, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+
+        this.latency = Timer.builder("integration.hedging.latency")
+                .description("Response time of the first attempts of hedged reads, used to compute the hedge delay")
+                .publishPercentiles(percentile)
+                .tag("operation", operation)
+                .register(meterRegistry);
+        this.calls = Counter.builder("integration.hedging.calls")
+                .description("Number of reads eligible for hedging")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        this.hedges = Counter.builder("integration.hedging.hedges")
+                .description("Number of hedge requests sent because the first request was slow")
+                .tag("operation", operation)
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("integration.hedging.wins")
+                .description("Number of hedge requests that answered before the first request")
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(Function<Integer, Mono<T>> call) {
+        if (!enabled) {
+            return call.apply(0);
+        }
+
+        return Mono.defer(() -> {
+            calls.increment();
+            long start = System.nanoTime();
+            AtomicReference<Throwable> firstError = new AtomicReference<>();
+            Sinks.Empty<Void> firstFailed = Sinks.empty();
+
+            Mono<T> first = call.apply(0)
+                    .doOnNext(value -> latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(error -> {
+                        firstError.set(error);
+                        firstFailed.tryEmitEmpty();
+                    });
+            Mono<T> hedge = Mono.delay(hedgeDelay())
+                    .takeUntilOther(firstFailed.asMono())
+                    .flatMap(tick -> {
+                        hedges.increment();
+                        return call.apply(1);
+                    })
+                    .doOnNext(value -> hedgeWins.increment());
+
+            // Fails with a NoSuchElementException when neither returns a value, the error of the first call is kept instead
+            return Mono.firstWithValue(first, hedge)
+                    .onErrorMap(NoSuchElementException.class, error -> firstError.get() != null ? firstError.get() : error);
+        });
+    }
+
+    private Duration hedgeDelay() {
+        for (ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+            if (value.percentile() == percentile) {
+                Duration delay = Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+                return delay.compareTo(minDelay) > 0 ? delay : minDelay;
+            }
+        }
+        return minDelay;
+    }
+}
@@ -0,0 +1,126 @@
+package com.jolly.microservices.composite.product.productcompositeservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jolly.microservices.api.core.product.Product;
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.composite.product.services.EventOutbox;
+import com.jolly.microservices.composite.product.services.EventPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.jolly.microservices.api.event.Event.Type.CREATE;
+import static com.jolly.microservices.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author jolly
+ */
+public class EventOutboxTests {
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path directory;
+
+    private EventPublisher eventPublisher;
+    private List<String> published;
+
+    @BeforeEach
+    void setUp() {
+        published = new CopyOnWriteArrayList<>();
+        eventPublisher = mock(EventPublisher.class);
+        when(eventPublisher.publish(anyString(), any())).thenAnswer(invocation -> {
+            Event<?, ?> event = invocation.getArgument(1);
+            published.add(invocation.getArgument(0) + ":" + event.getEventType() + ":" + event.getKey());
+            return Mono.empty();
+        });
+    }
+
+    @Test
+    void eventsAreRelayedInOrderPerKey() throws IOException {
+        EventOutbox outbox = createOutbox();
+
+        StepVerifier.create(outbox.append("products-out-0", new Event<>(CREATE, 1, new Product(1, "name", 1, null)))
+                        .then(outbox.append("products-out-0", new Event<>(DELETE, 1, null)))
+                        .then(outbox.append("products-out-0", new Event<>(CREATE, 1, new Product(1, "name", 2, null)))))
+                .verifyComplete();
+
+        StepVerifier.create(outbox.relay()).expectNext(3).verifyComplete();
+        assertEquals(List.of("products-out-0:CREATE:1", "products-out-0:DELETE:1", "products-out-0:CREATE:1"), published);
+
+        // Relayed events are not relayed again
+        StepVerifier.create(outbox.relay()).expectNext(0).verifyComplete();
+        outbox.close();
+    }
+
+    @Test
+    void eventsAreRelayedAfterRestart() throws IOException {
+        EventOutbox outbox = createOutbox();
+        StepVerifier.create(outbox.append("products-out-0", new Event<>(CREATE, 1, new Product(1, "name", 1, null)))).verifyComplete();
+        StepVerifier.create(outbox.relay()).expectNext(1).verifyComplete();
+        StepVerifier.create(outbox.append("reviews-out-0", new Event<>(DELETE, 2, null))).verifyComplete();
+        outbox.close();
+
+        published.clear();
+        EventOutbox restarted = createOutbox();
+        StepVerifier.create(restarted.relay()).expectNext(1).verifyComplete();
+        assertEquals(List.of("reviews-out-0:DELETE:2"), published);
+        restarted.close();
+    }
+
+    @Test
+    void failedBatchIsRelayedAgain() throws IOException {
+        EventOutbox outbox = createOutbox();
+        StepVerifier.create(outbox.append("recommendations-out-0", new Event<>(DELETE, 3, null))).verifyComplete();
+
+        when(eventPublisher.publish(anyString(), any())).thenReturn(Mono.error(new RuntimeException("broker down")));
+        StepVerifier.create(outbox.relay()).verifyError();
+
+        when(eventPublisher.publish(anyString(), any())).thenReturn(Mono.empty());
+        StepVerifier.create(outbox.relay()).expectNext(1).verifyComplete();
+        outbox.close();
+    }
+
+    @Test
+    void unreadableLineIsQuarantined() throws IOException {
+        EventOutbox outbox = createOutbox();
+        StepVerifier.create(outbox.append("products-out-0", new Event<>(CREATE, 1, new Product(1, "name", 1, null)))).verifyComplete();
+        Files.writeString(directory.resolve("outbox.log"), "not an event\n", StandardOpenOption.APPEND);
+        StepVerifier.create(outbox.append("products-out-0", new Event<>(DELETE, 1, null))).verifyComplete();
+
+        StepVerifier.create(outbox.relay()).expectNext(2).verifyComplete();
+        assertEquals(List.of("products-out-0:CREATE:1", "products-out-0:DELETE:1"), published);
+        assertEquals(List.of("not an event"), Files.readAllLines(directory.resolve("outbox.quarantine")));
+
+        // The quarantined line does not hold up later events
+        StepVerifier.create(outbox.append("products-out-0", new Event<>(CREATE, 2, new Product(2, "name", 1, null)))).verifyComplete();
+        StepVerifier.create(outbox.relay()).expectNext(1).verifyComplete();
+        outbox.close();
+    }
+
+    @Test
+    void directoryIsRequired() {
+        assertThrows(IllegalStateException.class,
+                () -> new EventOutbox(eventPublisher, mapper, new SimpleMeterRegistry(), "", 500, 60_000));
+    }
+
+    private EventOutbox createOutbox() throws IOException {
+        // A long relay interval, the tests relay the outbox themselves
+        return new EventOutbox(eventPublisher, mapper, new SimpleMeterRegistry(), directory.toString(), 500, 60_000);
+    }
+}
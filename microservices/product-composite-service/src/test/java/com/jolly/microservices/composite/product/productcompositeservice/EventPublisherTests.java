@@ -0,0 +1,212 @@
+package com.jolly.microservices.composite.product.productcompositeservice;
+
+import com.jolly.microservices.api.core.product.Product;
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.api.exceptions.EventProcessingException;
+import com.jolly.microservices.composite.product.services.EventPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+import static com.jolly.microservices.api.event.Event.Type.CREATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author jolly
+ */
+public class EventPublisherTests {
+    private static final String BINDING = "products-out-0";
+
+    private MeterRegistry meterRegistry;
+    private StreamBridge streamBridge;
+    private SubscribableChannel publishResults;
+    private SubscribableChannel errorChannel;
+    private List<CorrelationData> correlations;
+    private List<Message<?>> sent;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        streamBridge = mock(StreamBridge.class);
+        publishResults = new ExecutorSubscribableChannel();
+        errorChannel = new ExecutorSubscribableChannel();
+        correlations = new CopyOnWriteArrayList<>();
+        sent = new CopyOnWriteArrayList<>();
+        when(streamBridge.send(eq(BINDING), any(Object.class))).thenAnswer(invocation -> {
+            Message<?> message = invocation.getArgument(1);
+            sent.add(message);
+            CorrelationData correlation = message.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, CorrelationData.class);
+            if (correlation != null) {
+                correlations.add(correlation);
+            }
+            return true;
+        });
+    }
+
+    @Test
+    void publishCompletesWhenConfirmed() {
+        EventPublisher publisher = publisher(64, true, 10000);
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .then(() -> confirm(new CorrelationData.Confirm(true, null)))
+                .verifyComplete();
+    }
+
+    @Test
+    void publishFailsWhenNotConfirmed() {
+        EventPublisher publisher = publisher(64, true, 10000);
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .then(() -> confirm(new CorrelationData.Confirm(false, "nack")))
+                .expectError(EventProcessingException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void publishFailsWhenConfirmTimesOut() {
+        EventPublisher publisher = publisher(64, true, 100);
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void publishWithoutConfirmsCompletesWhenSent() {
+        EventPublisher publisher = publisher(64, false, 10000);
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .verifyComplete();
+
+        assertEquals(0, correlations.size());
+    }
+
+    @Test
+    void publishWithoutConfirmsFailsWhenSendFails() {
+        when(streamBridge.send(eq(BINDING), any(Object.class))).thenThrow(new IllegalStateException("not acknowledged"));
+        EventPublisher publisher = publisher(64, false, 10000);
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void publishWaitsForAPlaceInTheWindow() {
+        EventPublisher publisher = publisher(1, true, 10000);
+
+        // The first event takes the only place in the window, the others wait for it instead of failing
+        publisher.publish(BINDING, event(1)).subscribe();
+        StepVerifier.create(publisher.publish(BINDING, event(2)))
+                .then(() -> awaitCorrelations(1))
+                .then(() -> assertEquals(1.0, meterRegistry.get("events.publish.queued").gauge().value()))
+                .then(() -> confirm(correlations.get(0), new CorrelationData.Confirm(true, null)))
+                .then(() -> awaitCorrelations(2))
+                .then(() -> assertEquals(0.0, meterRegistry.get("events.publish.queued").gauge().value()))
+                .then(() -> confirm(correlations.get(1), new CorrelationData.Confirm(true, null)))
+                .verifyComplete();
+
+        assertEquals(0.0, meterRegistry.get("events.publish.inflight").gauge().value());
+    }
+
+    @Test
+    void cancelledWaitingPublishGivesUpItsTurn() {
+        EventPublisher publisher = publisher(1, true, 10000);
+
+        publisher.publish(BINDING, event(1)).subscribe();
+        publisher.publish(BINDING, event(2)).subscribe().dispose();
+
+        StepVerifier.create(publisher.publish(BINDING, event(3)))
+                .then(() -> awaitCorrelations(1))
+                .then(() -> confirm(correlations.get(0), new CorrelationData.Confirm(true, null)))
+                .then(() -> awaitCorrelations(2))
+                .then(() -> confirm(correlations.get(1), new CorrelationData.Confirm(true, null)))
+                .verifyComplete();
+
+        assertEquals(List.of(1, 3), sent.stream().map(message -> ((Event<?, ?>) message.getPayload()).getKey()).toList());
+    }
+
+    @Test
+    void kafkaPublishCompletesWhenAcknowledged() {
+        EventPublisher publisher = kafkaPublisher();
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .then(() -> publishResults.send(MessageBuilder.fromMessage(sent.get(0)).build()))
+                .verifyComplete();
+    }
+
+    @Test
+    void kafkaPublishFailsWhenTheSendFails() {
+        EventPublisher publisher = kafkaPublisher();
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .then(() -> errorChannel.send(new ErrorMessage(new MessagingException(sent.get(0), "not enough replicas"))))
+                .expectError(EventProcessingException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void kafkaPublishIgnoresResultsOfOtherSends() {
+        EventPublisher publisher = kafkaPublisher();
+
+        StepVerifier.create(publisher.publish(BINDING, event(1)))
+                .then(() -> publishResults.send(MessageBuilder.withPayload("other").build()))
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> publishResults.send(MessageBuilder.fromMessage(sent.get(0)).build()))
+                .verifyComplete();
+    }
+
+    private EventPublisher publisher(int maxInFlight, boolean confirms, long confirmTimeoutMillis) {
+        return new EventPublisher(streamBridge, Schedulers.boundedElastic(), publishResults, errorChannel, meterRegistry,
+                "rabbit", maxInFlight, confirms, confirmTimeoutMillis);
+    }
+
+    private EventPublisher kafkaPublisher() {
+        return new EventPublisher(streamBridge, Schedulers.boundedElastic(), publishResults, errorChannel, meterRegistry,
+                "kafka", 64, true, 10000);
+    }
+
+    private void awaitCorrelations(int count) {
+        Mono.fromSupplier(() -> correlations.size() >= count ? count : null)
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5));
+    }
+
+    private static void confirm(CorrelationData correlation, CorrelationData.Confirm confirm) {
+        correlation.getFuture().complete(confirm);
+    }
+
+    private void confirm(CorrelationData.Confirm confirm) {
+        // The message is sent on the publishEventScheduler, wait for it before confirming
+        Mono.fromSupplier(() -> correlations.isEmpty() ? null : correlations.get(0))
+                .repeatWhenEmpty(attempts -> attempts.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5))
+                .getFuture().complete(confirm);
+    }
+
+    private static Event<Integer, Product> event(int productId) {
+        return new Event<>(CREATE, productId, new Product(productId, "name " + productId, productId, null));
+    }
+}
@@ -0,0 +1,57 @@
+package com.jolly.microservices.composite.product.productcompositeservice;
+
+import com.jolly.microservices.composite.product.services.HedgeTargets;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author jolly
+ */
+public class HedgeTargetsTests {
+    private final WebClient loadBalancedClient = WebClient.create();
+    private final WebClient instanceClient = WebClient.create();
+
+    @Test
+    void hedgeGoesToAnotherInstance() {
+        HedgeTargets targets = new HedgeTargets(discoveryClient(instance("1", 8081), instance("2", 8082)), loadBalancedClient, instanceClient);
+
+        for (int read = 0; read < 4; read++) {
+            Function<Integer, Mono<String>> attempts = targets.attempts("review", (client, baseUrl) -> Mono.just(baseUrl));
+            String first = attempts.apply(0).block();
+            String hedge = attempts.apply(1).block();
+            assertNotEquals(first, hedge);
+        }
+    }
+
+    @Test
+    void singleInstanceIsNotHedged() {
+        HedgeTargets targets = new HedgeTargets(discoveryClient(instance("1", 8081)), loadBalancedClient, instanceClient);
+        Function<Integer, Mono<String>> attempts = targets.attempts("review",
+                (client, baseUrl) -> Mono.just(client == loadBalancedClient ? "load balanced " + baseUrl : baseUrl));
+
+        StepVerifier.create(attempts.apply(0)).expectNext("load balanced http://review").verifyComplete();
+        StepVerifier.create(attempts.apply(1)).verifyComplete();
+    }
+
+    private static ReactiveDiscoveryClient discoveryClient(ServiceInstance... instances) {
+        ReactiveDiscoveryClient discoveryClient = mock(ReactiveDiscoveryClient.class);
+        when(discoveryClient.getInstances("review")).thenReturn(Flux.just(instances));
+        return discoveryClient;
+    }
+
+    private static ServiceInstance instance(String instanceId, int port) {
+        return new DefaultServiceInstance(instanceId, "review", "localhost", port, false);
+    }
+}
@@ -35,6 +35,7 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
 
         LOG.trace("Convert the following json string to a map: {}", eventAsJson);
         Map mapEvent = convertJsonStringToMap(eventAsJson);
+        mapEvent.remove("eventId");
         mapEvent.remove("eventCreatedAt");
 
         Map mapExpectedEvent = getMapWithoutCreatedAt(expectedEvent);
@@ -56,6 +57,7 @@ public class IsSameEvent extends TypeSafeMatcher<String> {
 
     private Map getMapWithoutCreatedAt(Event event) {
         Map mapEvent = convertObjectToMap(event);
+        mapEvent.remove("eventId");
         mapEvent.remove("eventCreatedAt");
         return mapEvent;
     }
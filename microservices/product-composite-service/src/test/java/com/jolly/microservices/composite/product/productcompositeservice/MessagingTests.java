@@ -40,7 +40,8 @@ import static org.springframework.http.HttpStatus.ACCEPTED;
         webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
         properties = {
                 "spring.main.allow-bean-definition-overriding=true",
-                "eureka.client.enabled=false"
+                "eureka.client.enabled=false",
+                "app.publish.confirms=false"
         }
 )
 @Import({TestChannelBinderConfiguration.class})
@@ -117,6 +118,38 @@ public class MessagingTests {
         MatcherAssert.assertThat(reviewMessages.get(0), is(sameEventExceptCreatedAt(expectedReviewEvent)));
     }
 
+    @Test
+    void createCompositeProductBulk() {
+        ProductAggregate composite = new ProductAggregate(1, "name", 1,
+                List.of(new RecommendationSummary(1, "a", 1, "c"), new RecommendationSummary(2, "a", 2, "c")),
+                List.of(new ReviewSummary(1, "a", "s", "c"), new ReviewSummary(2, "a", "s", "c")), null);
+        postAndVerifyProduct(composite, ACCEPTED);
+
+        final List<String> productMessages = getMessages("products");
+        final List<String> recommendationMessages = getMessages("recommendations");
+        final List<String> reviewMessages = getMessages("reviews");
+
+        assertEquals(1, productMessages.size());
+
+        // Assert one bulk create event for all recommendations
+        assertEquals(1, recommendationMessages.size());
+
+        List<Recommendation> recommendations = composite.recommendations().stream()
+                .map(r -> new Recommendation(composite.productId(), r.recommendationId(), r.author(), r.rate(), r.content(), null))
+                .toList();
+        Event<Integer, Recommendation> expectedRecommendationEvent = Event.bulkCreate(composite.productId(), recommendations);
+        MatcherAssert.assertThat(recommendationMessages.get(0), is(sameEventExceptCreatedAt(expectedRecommendationEvent)));
+
+        // Assert one bulk create event for all reviews
+        assertEquals(1, reviewMessages.size());
+
+        List<Review> reviews = composite.reviews().stream()
+                .map(r -> new Review(composite.productId(), r.reviewId(), r.author(), r.subject(), r.content(), null))
+                .toList();
+        Event<Integer, Review> expectedReviewEvent = Event.bulkCreate(composite.productId(), reviews);
+        MatcherAssert.assertThat(reviewMessages.get(0), is(sameEventExceptCreatedAt(expectedReviewEvent)));
+    }
+
     @Test
     void deleteCompositeProduct() {
         deleteAndVerifyProduct(1, ACCEPTED);
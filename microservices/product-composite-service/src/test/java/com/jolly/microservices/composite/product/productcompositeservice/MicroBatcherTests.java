@@ -0,0 +1,80 @@
+package com.jolly.microservices.composite.product.productcompositeservice;
+
+import com.jolly.microservices.composite.product.services.MicroBatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author jolly
+ */
+public class MicroBatcherTests {
+    private MeterRegistry meterRegistry;
+    private List<Set<Integer>> batches;
+    private Function<Set<Integer>, Mono<Map<Integer, String>>> batchLoader;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        batches = new CopyOnWriteArrayList<>();
+        batchLoader = keys -> {
+            batches.add(keys);
+            return Mono.just(keys.stream().filter(key -> key != 13).collect(Collectors.toMap(key -> key, key -> "value " + key)));
+        };
+    }
+
+    @Test
+    void loadsWithinWindowShareOneCall() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", batchLoader, Duration.ofMillis(50), 10, meterRegistry);
+
+        StepVerifier.create(Mono.zip(batcher.load(1), batcher.load(2), batcher.load(1)))
+                .expectNextMatches(values -> values.getT1().equals("value 1")
+                        && values.getT2().equals("value 2")
+                        && values.getT3().equals("value 1"))
+                .verifyComplete();
+
+        assertEquals(List.of(Set.of(1, 2)), batches);
+        assertEquals(1, meterRegistry.get("integration.batch.size").tag("operation", "test").summary().count());
+        assertEquals(2.0, meterRegistry.get("integration.batch.size").tag("operation", "test").summary().totalAmount());
+    }
+
+    @Test
+    void fullBatchIsDispatchedBeforeWindow() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", batchLoader, Duration.ofSeconds(10), 2, meterRegistry);
+
+        StepVerifier.create(Mono.zip(batcher.load(1), batcher.load(2)))
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(List.of(Set.of(1, 2)), batches);
+    }
+
+    @Test
+    void missingKeyCompletesEmpty() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test", batchLoader, Duration.ofMillis(1), 10, meterRegistry);
+
+        StepVerifier.create(batcher.load(13)).verifyComplete();
+    }
+
+    @Test
+    void failedBatchFailsEveryLoad() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>("test",
+                keys -> Mono.error(new IllegalStateException("boom")), Duration.ofMillis(1), 10, meterRegistry);
+
+        StepVerifier.create(batcher.load(1)).expectError(IllegalStateException.class).verify();
+    }
+}
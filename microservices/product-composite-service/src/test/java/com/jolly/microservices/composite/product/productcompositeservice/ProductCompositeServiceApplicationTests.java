@@ -6,12 +6,14 @@ import com.jolly.microservices.api.composite.product.ReviewSummary;
 import com.jolly.microservices.api.core.product.Product;
 import com.jolly.microservices.api.core.recommendation.Recommendation;
 import com.jolly.microservices.api.core.review.Review;
+import com.jolly.microservices.api.event.Event;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
 import com.jolly.microservices.api.exceptions.NotFoundException;
 import com.jolly.microservices.composite.product.services.ProductCompositeIntegration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
@@ -21,18 +23,38 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Collections;
+import java.util.function.Consumer;
+
+import static com.jolly.microservices.api.event.Event.Type.CREATE;
 
 import static java.util.Collections.singletonList;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"eureka.client.enabled=false"})
+@SpringBootTest(
+		webEnvironment = RANDOM_PORT,
+		properties = {
+				"eureka.client.enabled=false",
+				"app.sectionBudget.recommendationsMillis=200",
+				"app.productAggregateCache.expireAfterInvalidationMillis=300"
+		}
+)
 class ProductCompositeServiceApplicationTests {
 	private static final int PRODUCT_ID_OK = 1;
 	private static final int PRODUCT_ID_NOT_FOUND = 2;
 	private static final int PRODUCT_ID_INVALID = 3;
+	private static final int PRODUCT_ID_CACHED = 4;
+	private static final int PRODUCT_ID_BATCH_1 = 5;
+	private static final int PRODUCT_ID_BATCH_2 = 6;
+	private static final int PRODUCT_ID_SLOW_RECOMMENDATIONS = 7;
+	private static final int PRODUCT_ID_FAILED_REVIEWS = 8;
+	private static final int PRODUCT_ID_INVALIDATED = 9;
+	private static final int PRODUCT_ID_STALLED_STREAM = 10;
 
 	@MockBean
 	private ProductCompositeIntegration integration;
@@ -40,6 +62,10 @@ class ProductCompositeServiceApplicationTests {
 	@Autowired
 	private WebTestClient client;
 
+	@Autowired
+	@Qualifier("productAggregateInvalidator")
+	private Consumer<Event<Integer, Object>> productAggregateInvalidator;
+
 	@BeforeEach
 	void setUp() {
 		when(integration.getProduct(PRODUCT_ID_OK))
@@ -65,7 +91,68 @@ class ProductCompositeServiceApplicationTests {
 		getAndVerifyProduct(PRODUCT_ID_OK, OK)
 				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
 				.jsonPath("$.recommendations.length()").isEqualTo(1)
-				.jsonPath("$.reviews.length()").isEqualTo(1);
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.omittedSections.length()").isEqualTo(0);
+	}
+
+	@Test
+	void getProductStream() {
+		when(integration.streamRecommendations(PRODUCT_ID_OK))
+				.thenReturn(Flux.just(
+						new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mockAddr"),
+						new Recommendation(PRODUCT_ID_OK, 2, "author", 2, "content", "mockAddr")
+				));
+		when(integration.streamReviews(PRODUCT_ID_OK)).thenReturn(Flux.empty());
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_OK + "/stream")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+				.jsonPath("$.recommendations.length()").isEqualTo(2)
+				.jsonPath("$.recommendations[1].recommendationId").isEqualTo(2)
+				.jsonPath("$.reviews.length()").isEqualTo(0)
+				.jsonPath("$.serviceAddresses.pro").isEqualTo("mock-addr")
+				.jsonPath("$.serviceAddresses.rec").isEqualTo("mockAddr");
+	}
+
+	@Test
+	void getProductStreamCutsOffStalledSection() {
+		when(integration.getProduct(PRODUCT_ID_STALLED_STREAM))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_STALLED_STREAM, "name", 1, "mock-addr")));
+		when(integration.streamRecommendations(PRODUCT_ID_STALLED_STREAM))
+				.thenReturn(Flux.concat(
+						Flux.just(new Recommendation(PRODUCT_ID_STALLED_STREAM, 1, "author", 1, "content", "mockAddr")),
+						Flux.never()));
+		when(integration.streamReviews(PRODUCT_ID_STALLED_STREAM))
+				.thenReturn(Flux.error(new IllegalStateException("review service down")));
+
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_STALLED_STREAM + "/stream")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectBody()
+				.jsonPath("$.productId").isEqualTo(PRODUCT_ID_STALLED_STREAM)
+				.jsonPath("$.recommendations.length()").isEqualTo(1)
+				.jsonPath("$.reviews.length()").isEqualTo(0)
+				.jsonPath("$.omittedSections.length()").isEqualTo(2)
+				.jsonPath("$.omittedSections[?(@ == 'recommendations')]").exists()
+				.jsonPath("$.omittedSections[?(@ == 'reviews')]").exists();
+	}
+
+	@Test
+	void getProductStreamNotFound() {
+		client.get()
+				.uri("/product-composite/" + PRODUCT_ID_NOT_FOUND + "/stream")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(NOT_FOUND)
+				.expectBody()
+				.jsonPath("$.message").isEqualTo("NOT FOUND: " + PRODUCT_ID_NOT_FOUND);
 	}
 
 	@Test
@@ -82,6 +169,117 @@ class ProductCompositeServiceApplicationTests {
 				.jsonPath("$.message").isEqualTo("INVALID: " + PRODUCT_ID_INVALID);
 	}
 
+	@Test
+	void getProductIsCachedUntilInvalidated() {
+		when(integration.getProduct(PRODUCT_ID_CACHED))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_CACHED, "name", 1, "mock-addr")));
+		when(integration.getRecommendations(PRODUCT_ID_CACHED)).thenReturn(Flux.empty());
+		when(integration.getReviews(PRODUCT_ID_CACHED)).thenReturn(Flux.empty());
+
+		getAndVerifyProduct(PRODUCT_ID_CACHED, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+		getAndVerifyProduct(PRODUCT_ID_CACHED, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+		verify(integration, times(1)).getProduct(PRODUCT_ID_CACHED);
+
+		productAggregateInvalidator.accept(new Event<>(CREATE, PRODUCT_ID_CACHED, null));
+
+		getAndVerifyProduct(PRODUCT_ID_CACHED, OK).jsonPath("$.productId").isEqualTo(PRODUCT_ID_CACHED);
+		verify(integration, times(2)).getProduct(PRODUCT_ID_CACHED);
+	}
+
+	@Test
+	void getProductLoadedRightAfterInvalidationExpiresEarly() throws InterruptedException {
+		when(integration.getProduct(PRODUCT_ID_INVALIDATED))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_INVALIDATED, "name", 1, "mock-addr")));
+		when(integration.getRecommendations(PRODUCT_ID_INVALIDATED)).thenReturn(Flux.empty());
+		when(integration.getReviews(PRODUCT_ID_INVALIDATED)).thenReturn(Flux.empty());
+
+		productAggregateInvalidator.accept(new Event<>(CREATE, PRODUCT_ID_INVALIDATED, null));
+
+		// The core services may not have applied the event yet, so the aggregate is only cached briefly
+		getAndVerifyProduct(PRODUCT_ID_INVALIDATED, OK);
+		getAndVerifyProduct(PRODUCT_ID_INVALIDATED, OK);
+		verify(integration, times(1)).getProduct(PRODUCT_ID_INVALIDATED);
+
+		Thread.sleep(500);
+
+		// Loaded again once expired, and then cached for the full time
+		getAndVerifyProduct(PRODUCT_ID_INVALIDATED, OK);
+		Thread.sleep(500);
+		getAndVerifyProduct(PRODUCT_ID_INVALIDATED, OK);
+		verify(integration, times(2)).getProduct(PRODUCT_ID_INVALIDATED);
+	}
+
+	@Test
+	void getProductOmitsSlowSection() {
+		when(integration.getProduct(PRODUCT_ID_SLOW_RECOMMENDATIONS))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_SLOW_RECOMMENDATIONS, "name", 1, "mock-addr")));
+		when(integration.getRecommendations(PRODUCT_ID_SLOW_RECOMMENDATIONS)).thenReturn(Flux.never());
+		when(integration.getReviews(PRODUCT_ID_SLOW_RECOMMENDATIONS))
+				.thenReturn(Flux.just(new Review(PRODUCT_ID_SLOW_RECOMMENDATIONS, 1, "author", "subj", "content", "mockAddr")));
+
+		getAndVerifyProduct(PRODUCT_ID_SLOW_RECOMMENDATIONS, OK)
+				.jsonPath("$.recommendations").doesNotExist()
+				.jsonPath("$.reviews.length()").isEqualTo(1)
+				.jsonPath("$.omittedSections.length()").isEqualTo(1)
+				.jsonPath("$.omittedSections[0]").isEqualTo("recommendations");
+
+		// Partial aggregates are not cached
+		getAndVerifyProduct(PRODUCT_ID_SLOW_RECOMMENDATIONS, OK);
+		verify(integration, times(2)).getProduct(PRODUCT_ID_SLOW_RECOMMENDATIONS);
+	}
+
+	@Test
+	void getProductOmitsFailedSection() {
+		when(integration.getProduct(PRODUCT_ID_FAILED_REVIEWS))
+				.thenReturn(Mono.just(new Product(PRODUCT_ID_FAILED_REVIEWS, "name", 1, "mock-addr")));
+		when(integration.getRecommendations(PRODUCT_ID_FAILED_REVIEWS)).thenReturn(Flux.empty());
+		when(integration.getReviews(PRODUCT_ID_FAILED_REVIEWS)).thenReturn(Flux.error(new IllegalStateException("review service down")));
+
+		// No recommendations is an empty section, failed reviews are omitted
+		getAndVerifyProduct(PRODUCT_ID_FAILED_REVIEWS, OK)
+				.jsonPath("$.recommendations.length()").isEqualTo(0)
+				.jsonPath("$.reviews").doesNotExist()
+				.jsonPath("$.omittedSections.length()").isEqualTo(1)
+				.jsonPath("$.omittedSections[0]").isEqualTo("reviews");
+
+		// Degraded aggregates are not cached
+		getAndVerifyProduct(PRODUCT_ID_FAILED_REVIEWS, OK);
+		verify(integration, times(2)).getProduct(PRODUCT_ID_FAILED_REVIEWS);
+	}
+
+	@Test
+	void getProductsByIds() {
+		when(integration.getProducts(anyList()))
+				.thenReturn(Flux.just(
+						new Product(PRODUCT_ID_BATCH_1, "name", 1, "mock-addr"),
+						new Product(PRODUCT_ID_BATCH_2, "name", 1, "mock-addr")
+				));
+		when(integration.getRecommendations(anyList()))
+				.thenReturn(Flux.just(new Recommendation(PRODUCT_ID_BATCH_2, 1, "author", 1, "content", "mockAddr")));
+		when(integration.getReviews(anyList()))
+				.thenReturn(Flux.just(
+						new Review(PRODUCT_ID_BATCH_1, 1, "author", "subj", "content", "mockAddr"),
+						new Review(PRODUCT_ID_BATCH_2, 1, "author", "subj", "content", "mockAddr")
+				));
+
+		client.get()
+				.uri("/product-composite?ids=" + PRODUCT_ID_BATCH_2 + "," + PRODUCT_ID_NOT_FOUND + "," + PRODUCT_ID_BATCH_1)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_BATCH_2)
+				.jsonPath("$[0].recommendations.length()").isEqualTo(1)
+				.jsonPath("$[0].reviews.length()").isEqualTo(1)
+				.jsonPath("$[1].productId").isEqualTo(PRODUCT_ID_BATCH_1)
+				.jsonPath("$[1].recommendations.length()").isEqualTo(0)
+				.jsonPath("$[1].reviews.length()").isEqualTo(1);
+
+		verify(integration, times(1)).getProducts(anyList());
+	}
+
 	private WebTestClient.BodyContentSpec getAndVerifyProduct(int productId, HttpStatus expectedStatus) {
 		return client.get()
 				.uri("/product-composite/" + productId)
@@ -0,0 +1,106 @@
+package com.jolly.microservices.composite.product.productcompositeservice;
+
+import com.jolly.microservices.api.exceptions.DeadlineExceededException;
+import com.jolly.microservices.composite.product.services.RequestCoalescer;
+import com.jolly.microservices.util.http.RequestDeadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author jolly
+ */
+public class RequestCoalescerTests {
+    private MeterRegistry meterRegistry;
+    private RequestCoalescer<Integer, String> coalescer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new RequestCoalescer<>("test", meterRegistry);
+    }
+
+    @Test
+    void concurrentCallersShareOneCall() {
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<String> response = Sinks.one();
+        Function<Integer, Mono<String>> call = key -> {
+            calls.incrementAndGet();
+            return response.asMono();
+        };
+
+        Mono<String> first = coalescer.execute(1, call);
+        Mono<String> second = coalescer.execute(1, call);
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> response.tryEmitValue("value"))
+                .expectNextMatches(values -> values.getT1().equals("value") && values.getT2().equals("value"))
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get("integration.calls").tag("operation", "test").counter().count());
+        assertEquals(1.0, meterRegistry.get("integration.calls.coalesced").tag("operation", "test").counter().count());
+    }
+
+    @Test
+    void completedCallIsNotReused() {
+        AtomicInteger calls = new AtomicInteger();
+        Function<Integer, Mono<String>> call = key -> Mono.fromCallable(() -> "call " + calls.incrementAndGet());
+
+        StepVerifier.create(coalescer.execute(1, call)).expectNext("call 1").verifyComplete();
+        StepVerifier.create(coalescer.execute(1, call)).expectNext("call 2").verifyComplete();
+    }
+
+    @Test
+    void failedCallIsCleared() {
+        AtomicInteger calls = new AtomicInteger();
+        Function<Integer, Mono<String>> call = key -> calls.incrementAndGet() == 1
+                ? Mono.error(new IllegalStateException("boom"))
+                : Mono.just("recovered");
+
+        StepVerifier.create(coalescer.execute(1, call)).expectError(IllegalStateException.class).verify();
+        StepVerifier.create(coalescer.execute(1, call)).expectNext("recovered").verifyComplete();
+    }
+
+    @Test
+    void sharedCallOutlivesTheDeadlineOfTheFirstCaller() {
+        AtomicReference<Optional<Instant>> deadlineOfCall = new AtomicReference<>();
+        Sinks.One<String> response = Sinks.one();
+        Function<Integer, Mono<String>> call = key -> Mono.deferContextual(context -> {
+            deadlineOfCall.set(RequestDeadline.get(context));
+            return response.asMono();
+        });
+
+        CompletableFuture<String> first = coalescer.execute(1, call)
+                .contextWrite(context -> RequestDeadline.put(context, Instant.now().plusMillis(100)))
+                .toFuture();
+        CompletableFuture<String> second = coalescer.execute(1, call)
+                .contextWrite(context -> RequestDeadline.put(context, Instant.now().plusSeconds(10)))
+                .toFuture();
+
+        StepVerifier.create(Mono.fromFuture(first))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(5));
+        response.tryEmitValue("value");
+        StepVerifier.create(Mono.fromFuture(second))
+                .expectNext("value")
+                .verifyComplete();
+
+        assertEquals(Optional.empty(), deadlineOfCall.get());
+        assertEquals(1.0, meterRegistry.get("integration.calls").tag("operation", "test").counter().count());
+    }
+}
@@ -0,0 +1,126 @@
+package com.jolly.microservices.composite.product.productcompositeservice;
+
+import com.jolly.microservices.composite.product.services.RequestHedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author jolly
+ */
+public class RequestHedgerTests {
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void slowCallIsHedgedAndCancelled() {
+        RequestHedger hedger = new RequestHedger("test", true, 0.95, Duration.ofMillis(10), meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicBoolean slowCallCancelled = new AtomicBoolean(false);
+        Function<Integer, Mono<String>> call = attempt -> {
+            calls.incrementAndGet();
+            return attempt == 0
+                    ? Mono.<String>never().doOnCancel(() -> slowCallCancelled.set(true))
+                    : Mono.just("hedge");
+        };
+
+        StepVerifier.create(hedger.execute(call))
+                .expectNext("hedge")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, calls.get());
+        assertTrue(slowCallCancelled.get());
+        assertEquals(1.0, meterRegistry.get("integration.hedging.hedges").tag("operation", "test").counter().count());
+        assertEquals(1.0, meterRegistry.get("integration.hedging.wins").tag("operation", "test").counter().count());
+        // A read won by the hedge says nothing about the latency of first attempts
+        assertEquals(0, meterRegistry.get("integration.hedging.latency").tag("operation", "test").timer().count());
+    }
+
+    @Test
+    void fastErrorOfHedgeDoesNotWin() {
+        RequestHedger hedger = new RequestHedger("test", true, 0.95, Duration.ofMillis(10), meterRegistry);
+        Function<Integer, Mono<String>> call = attempt -> attempt == 0
+                ? Mono.just("first").delayElement(Duration.ofMillis(200))
+                : Mono.error(new IllegalStateException("hedge failed"));
+
+        StepVerifier.create(hedger.execute(call))
+                .expectNext("first")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(0.0, meterRegistry.get("integration.hedging.wins").tag("operation", "test").counter().count());
+    }
+
+    @Test
+    void errorBeforeHedgeIsNotHedged() {
+        RequestHedger hedger = new RequestHedger("test", true, 0.95, Duration.ofMillis(100), meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+        Function<Integer, Mono<String>> call = attempt -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalArgumentException("not found"));
+        };
+
+        StepVerifier.create(hedger.execute(call))
+                .expectError(IllegalArgumentException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, meterRegistry.get("integration.hedging.hedges").tag("operation", "test").counter().count());
+    }
+
+    @Test
+    void errorOfBothCallsIsTheErrorOfTheFirst() {
+        RequestHedger hedger = new RequestHedger("test", true, 0.95, Duration.ofMillis(10), meterRegistry);
+        Function<Integer, Mono<String>> call = attempt -> attempt == 0
+                ? Mono.<String>error(new IllegalArgumentException("first failed")).delaySubscription(Duration.ofMillis(200))
+                : Mono.error(new IllegalStateException("hedge failed"));
+
+        StepVerifier.create(hedger.execute(call))
+                .expectError(IllegalArgumentException.class)
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void fastCallIsNotHedged() {
+        RequestHedger hedger = new RequestHedger("test", true, 0.95, Duration.ofSeconds(10), meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.execute(attempt -> Mono.fromCallable(() -> "call " + calls.incrementAndGet())))
+                .expectNext("call 1")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(1.0, meterRegistry.get("integration.hedging.calls").tag("operation", "test").counter().count());
+        assertEquals(0.0, meterRegistry.get("integration.hedging.hedges").tag("operation", "test").counter().count());
+        assertEquals(1, meterRegistry.get("integration.hedging.latency").tag("operation", "test").timer().count());
+    }
+
+    @Test
+    void disabledHedgerMakesOneCall() {
+        RequestHedger hedger = new RequestHedger("test", false, 0.95, Duration.ZERO, meterRegistry);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(hedger.execute(attempt -> Mono.fromCallable(() -> "call " + calls.incrementAndGet())))
+                .expectNext("call 1")
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+        assertEquals(0.0, meterRegistry.get("integration.hedging.calls").tag("operation", "test").counter().count());
+    }
+}
@@ -1,8 +1,18 @@
 package com.jolly.microservices.core.product.persistence;
 
-import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface ProductRepository extends ReactiveCrudRepository<ProductEntity, String> {
+import java.util.Collection;
+
+public interface ProductRepository extends ReactiveMongoRepository<ProductEntity, String>, ProductUpsertRepository {
     Mono<ProductEntity> findByProductId(int productId);
+
+    Flux<ProductEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Deletes the product with a single deleteMany, returns the number of deleted products.
+     */
+    Mono<Long> deleteByProductId(int productId);
 }
@@ -0,0 +1,24 @@
+package com.jolly.microservices.core.product.persistence;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Idempotent creates: a product is inserted unless one with its productId exists, which is then left as is.
+ * Creating a product again, e.g. from a replayed event, is a no-op instead of a duplicate key error.
+ *
+ * @author jolly
+ */
+public interface ProductUpsertRepository {
+
+    /**
+     * Returns true if the product was inserted, false if it existed.
+     */
+    Mono<Boolean> upsert(ProductEntity entity);
+
+    /**
+     * Upserts the products with a single bulk write, returns the number of products inserted.
+     */
+    Mono<Integer> upsertAll(Collection<ProductEntity> entities);
+}
@@ -0,0 +1,57 @@
+package com.jolly.microservices.core.product.persistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Upserts with $setOnInsert only, so a product that exists is matched but not written.
+ *
+ * @author jolly
+ */
+class ProductUpsertRepositoryImpl implements ProductUpsertRepository {
+    private final ReactiveMongoOperations mongoOperations;
+
+    @Autowired
+    ProductUpsertRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Mono<Boolean> upsert(ProductEntity entity) {
+        return mongoOperations.upsert(byKey(entity), insertOnly(entity), ProductEntity.class)
+                .map(result -> result.getUpsertedId() != null);
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(Collection<ProductEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.just(0);
+        }
+        ReactiveBulkOperations bulkOperations = mongoOperations.bulkOps(BulkMode.UNORDERED, ProductEntity.class);
+        entities.forEach(entity -> bulkOperations.upsert(byKey(entity), insertOnly(entity)));
+        return bulkOperations.execute().map(result -> result.getUpserts().size());
+    }
+
+    private static Query byKey(ProductEntity entity) {
+        return Query.query(where("productId").is(entity.getProductId()));
+    }
+
+    /**
+     * The productId is taken from the query on insert. Setting the version keeps it from being incremented on every match.
+     */
+    private static Update insertOnly(ProductEntity entity) {
+        return new Update()
+                .setOnInsert("name", entity.getName())
+                .setOnInsert("weight", entity.getWeight())
+                .setOnInsert("version", 0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.jolly.microservices.core.product.services;
+
+import com.jolly.microservices.api.core.product.Product;
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * @author jolly
+ */
+@Configuration
+public class CacheConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheConfig.class);
+
+    /**
+     * The products last read, cached by productId in front of the repository. Products that are not found are not cached.
+     */
+    @Bean
+    public ReadThroughCache<Integer, Product> productCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.productCache.maxSize:10000}") long maxSize,
+            @Value("${app.productCache.expireAfterWriteSeconds:600}") long expireAfterWriteSeconds,
+            @Value("${app.productCache.expireAfterInvalidationMillis:5000}") long expireAfterInvalidationMillis,
+            @Value("${app.productCache.loadTimeoutMillis:5000}") long loadTimeoutMillis
+    ) {
+        return new ReadThroughCache<>("products", meterRegistry, maxSize,
+                Duration.ofSeconds(expireAfterWriteSeconds), Duration.ofMillis(expireAfterInvalidationMillis),
+                Duration.ofMillis(loadTimeoutMillis));
+    }
+
+    /**
+     * Subscribes to the products destination without a consumer group and unpartitioned, i.e. every product instance sees
+     * every event, also the ones of partitions consumed by other instances, and evicts the product from its own cache.
+     */
+    @Bean
+    public Consumer<Event<Integer, Object>> productCacheInvalidator(ReadThroughCache<Integer, Product> productCache) {
+        return event -> {
+            if (event.getKey() == null) {
+                LOG.warn("Ignores a {} event without key", event.getEventType());
+                return;
+            }
+
+            LOG.debug("Invalidate cached product on {} event for productId: {}", event.getEventType(), event.getKey());
+            productCache.evict(event.getKey());
+        };
+    }
+}
@@ -3,12 +3,25 @@ package com.jolly.microservices.core.product.services;
 import com.jolly.microservices.api.core.product.Product;
 import com.jolly.microservices.api.core.product.ProductService;
 import com.jolly.microservices.api.event.Event;
-import com.jolly.microservices.api.exceptions.EventProcessingException;
+import com.jolly.microservices.util.messaging.DeadLetterPublisher;
+import com.jolly.microservices.util.messaging.ErrorClassifier;
+import com.jolly.microservices.util.messaging.EventBatchProcessor;
+import com.jolly.microservices.util.messaging.EventDeduplicator;
+import com.jolly.microservices.util.messaging.EventLatencyRecorder;
+import com.jolly.microservices.util.messaging.ReactiveEventProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author jolly
@@ -16,29 +29,83 @@ import java.util.function.Consumer;
 @Configuration
 public class MessageProcessorConfig {
     private final ProductService productService;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final EventDeduplicator deduplicator;
+    private final ErrorClassifier errorClassifier;
+    private final EventLatencyRecorder latencyRecorder;
+    private final MeterRegistry meterRegistry;
+    private final int concurrency;
+    private final int maxPending;
+    private final int maxAttempts;
+    private final Duration backOffInitialInterval;
+    private final Duration backOffMaxInterval;
 
     @Autowired
-    public MessageProcessorConfig(ProductService productService) {
+    public MessageProcessorConfig(
+            ProductService productService,
+            DeadLetterPublisher deadLetterPublisher,
+            EventDeduplicator deduplicator,
+            ErrorClassifier errorClassifier,
+            EventLatencyRecorder latencyRecorder,
+            MeterRegistry meterRegistry,
+            @Value("${app.messaging.concurrency:8}") int concurrency,
+            @Value("${app.messaging.maxPending:1024}") int maxPending,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long backOffMaxInterval
+    ) {
         this.productService = productService;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.deduplicator = deduplicator;
+        this.errorClassifier = errorClassifier;
+        this.latencyRecorder = latencyRecorder;
+        this.meterRegistry = meterRegistry;
+        this.concurrency = concurrency;
+        this.maxPending = maxPending;
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = Duration.ofMillis(backOffInitialInterval);
+        this.backOffMaxInterval = Duration.ofMillis(backOffMaxInterval);
     }
 
+    /**
+     * Consumes the events without blocking, the retry settings of the binding are applied by the processor to retryable errors.
+     */
     @Bean
-    public Consumer<Event<Integer, Product>> messageProcessor() {
-        return event -> {
-            switch (event.getEventType()) {
-                case CREATE -> {
-                    Product product = event.getData();
-                    productService.createProduct(product).block();
-                }
-                case DELETE -> {
-                    int productId = event.getKey();
-                    productService.deleteProduct(productId).block();
-                }
-                default -> {
-                    String errorMessage = String.format("Incorrect event type: %s, expected CREATE or DELETE event", event.getEventType());
-                    throw new EventProcessingException(errorMessage);
-                }
-            }
-        };
+    public Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> messageProcessor() {
+        ReactiveEventProcessor<Product> processor = new ReactiveEventProcessor<>(
+                "product",
+                this::createProducts,
+                productService::deleteProduct,
+                deadLetterPublisher,
+                deduplicator,
+                errorClassifier,
+                latencyRecorder,
+                concurrency,
+                maxPending,
+                maxAttempts,
+                backOffInitialInterval,
+                backOffMaxInterval);
+        return processor::process;
+    }
+
+    /**
+     * Consumes the events in batches, used by the streaming_batch profile.
+     */
+    @Bean
+    public Consumer<List<Event<Integer, Product>>> batchMessageProcessor() {
+        EventBatchProcessor<Product> processor = new EventBatchProcessor<>(
+                "product",
+                this::createProducts,
+                productService::deleteProduct,
+                deadLetterPublisher,
+                deduplicator,
+                errorClassifier,
+                latencyRecorder,
+                meterRegistry);
+        return events -> processor.process(events).block();
+    }
+
+    private Mono<Void> createProducts(List<Product> products) {
+        return products.size() == 1 ? productService.createProduct(products.get(0)).then() : productService.createProducts(products).then();
     }
 }
@@ -6,14 +6,19 @@ import com.jolly.microservices.api.exceptions.InvalidInputException;
 import com.jolly.microservices.api.exceptions.NotFoundException;
 import com.jolly.microservices.core.product.persistence.ProductEntity;
 import com.jolly.microservices.core.product.persistence.ProductRepository;
+import com.jolly.microservices.util.cache.ReadThroughCache;
 import com.jolly.microservices.util.http.ServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.logging.Level;
 
 /**
@@ -26,16 +31,19 @@ public class ProductServiceImpl implements ProductService {
     private final ServiceUtil serviceUtil;
     private final ProductRepository repository;
     private final ProductMapper mapper;
+    private final ReadThroughCache<Integer, Product> productCache;
 
     @Autowired
     public ProductServiceImpl(
             ServiceUtil serviceUtil,
             ProductRepository repository,
-            ProductMapper mapper
+            ProductMapper mapper,
+            ReadThroughCache<Integer, Product> productCache
     ) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.productCache = productCache;
     }
 
     @Override
@@ -44,8 +52,27 @@ public class ProductServiceImpl implements ProductService {
 
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
-        return repository.findByProductId(productId)
-                .switchIfEmpty(Mono.error(new NotFoundException(String.format("No product found for productId: %d", productId))))
+        return productCache.get(productId, id -> repository.findByProductId(id)
+                        .log(LOG.getName(), Level.FINE)
+                        .map(mapper::entityToApi)
+                        .map(e -> new Product(
+                                e.productId(),
+                                e.name(),
+                                e.weight(),
+                                serviceUtil.getServiceAddress()
+                        )))
+                .switchIfEmpty(Mono.error(new NotFoundException(String.format("No product found for productId: %d", productId))));
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        LOG.debug("/product return the found products for productIds={}", productIds);
+
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        return repository.findByProductIdIn(productIds)
                 .log(LOG.getName(), Level.FINE)
                 .map(mapper::entityToApi)
                 .map(e -> new Product(
@@ -63,15 +90,63 @@ public class ProductServiceImpl implements ProductService {
         }
 
         ProductEntity entity = mapper.apiToEntity(body);
-        return repository.save(entity)
+        return repository.upsert(entity)
                 .log(LOG.getName(), Level.FINE)
+                .doOnNext(inserted -> {
+                    if (!inserted) {
+                        LOG.debug("createProduct: product {} exists already, left as is", body.productId());
+                    }
+                })
                 .onErrorMap(
                         DuplicateKeyException.class,
                         ex -> new InvalidInputException(String.format("Duplicate key, productId: %d", body.productId()))
                 )
+                // The product as stored, which is the existing one if the upsert left it as is
+                // Before the result is emitted, so a read after the create never gets the cached product from before it
+                .doOnTerminate(() -> productCache.invalidate(body.productId()))
+                .flatMap(inserted -> inserted ? Mono.just(entity) : repository.findByProductId(body.productId())
+                        .switchIfEmpty(Mono.error(() -> new NotFoundException(
+                                String.format("Product %d was deleted while being created", body.productId())))))
+                .map(mapper::entityToApi);
+    }
+
+    @Override
+    public Flux<Product> createProducts(List<Product> body) {
+        body.forEach(product -> {
+            if (product.productId() < 1) {
+                throw new InvalidInputException(String.format("Invalid productId: %d", product.productId()));
+            }
+        });
+
+        List<Integer> productIds = body.stream().map(Product::productId).toList();
+        if (Set.copyOf(productIds).size() < productIds.size()) {
+            throw new InvalidInputException("Duplicate key in bulk create of products, productIds: " + productIds);
+        }
+
+        List<ProductEntity> entities = body.stream().map(mapper::apiToEntity).toList();
+
+        // A single bulk write, products that exist already are left as is
+        return repository.upsertAll(entities)
+                .log(LOG.getName(), Level.FINE)
+                .doOnNext(inserted -> LOG.debug("createProducts: inserted {} of {} products", inserted, body.size()))
+                .onErrorMap(
+                        DuplicateKeyException.class,
+                        ex -> new InvalidInputException("Duplicate key in bulk create of " + body.size() + " products: " + ex.getMessage())
+                )
+                .doOnTerminate(() -> productCache.invalidateAll(productIds))
+                .flatMapMany(inserted -> inserted == entities.size() ? Flux.fromIterable(entities) : stored(productIds))
                 .map(mapper::entityToApi);
     }
 
+    /**
+     * The products as stored, in the order of the productIds, for a bulk create that left some existing products as is.
+     */
+    private Flux<ProductEntity> stored(List<Integer> productIds) {
+        return repository.findByProductIdIn(productIds)
+                .collectMap(ProductEntity::getProductId)
+                .flatMapIterable(stored -> productIds.stream().map(stored::get).filter(Objects::nonNull).toList());
+    }
+
     @Override
     public Mono<Void> deleteProduct(int productId) {
         if (productId < 1) {
@@ -79,9 +154,9 @@ public class ProductServiceImpl implements ProductService {
         }
 
         LOG.debug("delete Product: tries to delete an entity with productId: {}", productId);
-        return repository.findByProductId(productId)
-                    .log(LOG.getName(), Level.FINE)
-                    .map(repository::delete)
-                    .flatMap(e -> e);
+        return repository.deleteByProductId(productId)
+                .log(LOG.getName(), Level.FINE)
+                .doOnTerminate(() -> productCache.invalidate(productId))
+                .then();
     }
 }
@@ -93,6 +93,42 @@ public class PersistenceTest extends MongoTestBase {
         StepVerifier.create(repository.save(entity)).expectError(DuplicateKeyException.class).verify();
     }
 
+    @Test
+    void upsert() {
+        // An existing product is left as is
+        StepVerifier.create(repository.upsert(new ProductEntity(savedEntity.getProductId(), "n2", 2)))
+                .expectNext(false)
+                .verifyComplete();
+        StepVerifier.create(repository.findByProductId(savedEntity.getProductId()))
+                .expectNextMatches(foundEntity -> areProductEqual(savedEntity, foundEntity))
+                .verifyComplete();
+
+        StepVerifier.create(repository.upsert(new ProductEntity(2, "name", 2)))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(repository.findByProductId(2))
+                .expectNextMatches(foundEntity -> foundEntity.getName().equals("name") && foundEntity.getVersion() == 0)
+                .verifyComplete();
+    }
+
+    @Test
+    void upsertAll() {
+        List<ProductEntity> entities = List.of(
+                new ProductEntity(savedEntity.getProductId(), "n2", 2),
+                new ProductEntity(2, "name", 2),
+                new ProductEntity(3, "name", 3));
+
+        StepVerifier.create(repository.upsertAll(entities)).expectNext(2).verifyComplete();
+        StepVerifier.create(repository.upsertAll(entities)).expectNext(0).verifyComplete();
+        StepVerifier.create(repository.count()).expectNext(3L).verifyComplete();
+    }
+
+    @Test
+    void deleteByProductId() {
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId())).expectNext(1L).verifyComplete();
+        StepVerifier.create(repository.deleteByProductId(savedEntity.getProductId())).expectNext(0L).verifyComplete();
+    }
+
     @Test
     void optimisticLockError() {
 
@@ -4,22 +4,46 @@ import com.jolly.microservices.api.core.product.Product;
 import com.jolly.microservices.api.event.Event;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
 import com.jolly.microservices.core.product.persistence.ProductRepository;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import com.jolly.microservices.util.messaging.ConsumerLagMonitor;
+import com.jolly.microservices.util.messaging.DeadLetterPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.jolly.microservices.api.event.Event.Type.CREATE;
 import static com.jolly.microservices.api.event.Event.Type.DELETE;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
@@ -30,12 +54,28 @@ class ProductServiceApplicationTests extends MongoTestBase {
 	@Autowired
 	private ProductRepository repository;
 	@Autowired
+	private ReadThroughCache<Integer, Product> productCache;
+	@Autowired
+	@Qualifier("productCacheInvalidator")
+	private Consumer<Event<Integer, Object>> productCacheInvalidator;
+	@Autowired
 	@Qualifier("messageProcessor")
-	private Consumer<Event<Integer, Product>> messageProcessor;
+	private Function<Flux<Message<Event<Integer, Product>>>, Mono<Void>> messageProcessor;
+	@Autowired
+	@Qualifier("batchMessageProcessor")
+	private Consumer<List<Event<Integer, Product>>> batchMessageProcessor;
+	@Autowired
+	private MeterRegistry meterRegistry;
+	@Autowired
+	private ConsumerLagMonitor lagMonitor;
+	@MockBean
+	private DeadLetterPublisher deadLetterPublisher;
 
 	@BeforeEach
 	void setupDb() {
+		when(deadLetterPublisher.publish(any(), any())).thenReturn(Mono.empty());
 		repository.deleteAll().block();
+		productCache.invalidateAll();
 	}
 
 	@Test
@@ -55,7 +95,23 @@ class ProductServiceApplicationTests extends MongoTestBase {
 	}
 
 	@Test
-	void duplicateError() {
+	void getProductsByIds() {
+		sendCreateProductEvent(1);
+		sendCreateProductEvent(2);
+		sendCreateProductEvent(3);
+
+		client.get()
+				.uri("/product?productIds=1,3,13")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(OK)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody()
+				.jsonPath("$.length()").isEqualTo(2);
+	}
+
+	@Test
+	void duplicateCreateIsNoOp() {
 		int productId = 1;
 
 		assertNull(repository.findByProductId(productId).block());
@@ -64,11 +120,130 @@ class ProductServiceApplicationTests extends MongoTestBase {
 
 		assertNotNull(repository.findByProductId(productId).block());
 
-		InvalidInputException thrown = assertThrows(
-				InvalidInputException.class,
-				() -> sendCreateProductEvent(productId),
-				"Expected a InvalidInputException here!");
-		assertEquals("Duplicate key, productId: " + productId, thrown.getMessage());
+		// Creating a product that exists, e.g. replaying its event, leaves it as is instead of failing on the duplicate key
+		sendEvent(new Event<>(CREATE, productId, new Product(productId, "Other name", 2, "SA")));
+
+		assertEquals(1, (long)repository.count().block());
+		assertEquals("Name " + productId, repository.findByProductId(productId).block().getName());
+		verify(deadLetterPublisher, never()).publish(any(), any());
+	}
+
+	@Test
+	void productIsCachedUntilEvicted() {
+		int productId = 1;
+
+		sendCreateProductEvent(productId);
+		getAndVerifyProduct(productId, OK);
+
+		// Removed behind the back of the cache, the product is still served from it
+		repository.deleteAll().block();
+		getAndVerifyProduct(productId, OK)
+				.jsonPath("$.name").isEqualTo("Name " + productId);
+
+		// Until a delete event of the product evicts it
+		sendDeleteProductEvent(productId);
+		getAndVerifyProduct(productId, NOT_FOUND);
+
+		// And a create event makes the product visible again at once, products not found are not cached
+		sendCreateProductEvent(productId);
+		getAndVerifyProduct(productId, OK);
+
+		client.get()
+				.uri("/actuator/metrics/cache.gets?tag=cache:products&tag=result:hit")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.measurements[0].value").value(hits -> assertTrue(((Number) hits).doubleValue() >= 1));
+		assertNotNull(meterRegistry.find("cache.hit.ratio").tag("cache", "products").gauge());
+	}
+
+	@Test
+	void restDeleteEvictsProduct() {
+		int productId = 1;
+
+		sendCreateProductEvent(productId);
+		getAndVerifyProduct(productId, OK);
+
+		client.delete()
+				.uri("/product/" + productId)
+				.exchange()
+				.expectStatus().isOk();
+		getAndVerifyProduct(productId, NOT_FOUND);
+	}
+
+	@Test
+	void productWrittenByOtherInstanceIsEvictedOnItsEvent() {
+		int productId = 1;
+
+		sendCreateProductEvent(productId);
+		getAndVerifyProduct(productId, OK);
+
+		// Deleted by another instance, which publishes the event every instance sees
+		repository.deleteAll().block();
+		productCacheInvalidator.accept(new Event<>(DELETE, productId, null));
+		getAndVerifyProduct(productId, NOT_FOUND);
+
+		assertTrue(meterRegistry.get("cache.invalidations").tags("cache", "products").counter().count() > 0);
+	}
+
+	@Test
+	void nonRetryableErrorIsNotRetried() {
+		double errorsBefore = invalidInputErrors();
+
+		// An invalid product fails the same way on every attempt, so it is dead-lettered after the first one
+		sendCreateProductEvent(0);
+
+		assertEquals(1.0, invalidInputErrors() - errorsBefore);
+		verify(deadLetterPublisher, times(1)).publish(any(), any());
+	}
+
+	@Test
+	void latenciesAreRecorded() {
+		long totalBefore = createLatencies("events.latency.total");
+		long processingBefore = createLatencies("events.latency.processing");
+
+		sendCreateProductEvent(1);
+
+		assertEquals(1, createLatencies("events.latency.total") - totalBefore);
+		assertEquals(1, createLatencies("events.latency.processing") - processingBefore);
+	}
+
+	@Test
+	void consumerStats() {
+		sendCreateProductEvent(1);
+		lagMonitor.refresh();
+
+		// Events applied directly, without a binder, have no topic or partition
+		client.get()
+				.uri("/actuator/consumers")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.bindings['messageProcessor-in-0'].destination").isEqualTo("products")
+				.jsonPath("$.bindings['messageProcessor-in-0'].group").isEqualTo("productsGroup")
+				.jsonPath("$.consumedPerSecond['unknown/none']").exists()
+				.jsonPath("$.processingMillis['unknown/none'].p99").exists()
+				.jsonPath("$.deadLetters.total").exists();
+	}
+
+	@Test
+	void redeliveredEventsAreDropped() {
+		int productId = 1;
+		Event<Integer, Product> createEvent = createProductEvent(productId);
+
+		sendEvent(createEvent);
+
+		// A redelivered event is dropped instead of being rejected as a duplicate key
+		sendEvent(createEvent);
+		assertEquals(1, (long)repository.count().block());
+		verify(deadLetterPublisher, never()).publish(any(), any());
+
+		// And it does not recreate the product once deleted
+		sendDeleteProductEvent(productId);
+		sendEvent(createEvent);
+		assertNull(repository.findByProductId(productId).block());
 	}
 
 	@Test
@@ -84,6 +259,81 @@ class ProductServiceApplicationTests extends MongoTestBase {
 		sendDeleteProductEvent(productId);
 	}
 
+	@Test
+	void eventsOfOneKeyAreProcessedInOrder() {
+		// Creates and deletes of ten products, interleaved, are written concurrently but in order per productId
+		List<Event<Integer, Product>> events = new ArrayList<>();
+		for (int productId = 1; productId <= 10; productId++) {
+			events.add(createProductEvent(productId));
+		}
+		for (int productId = 1; productId <= 10; productId++) {
+			events.add(new Event<>(DELETE, productId, null));
+		}
+		events.add(createProductEvent(3));
+
+		messageProcessor.apply(Flux.fromIterable(events).map(event -> MessageBuilder.withPayload(event).build())).block();
+
+		assertEquals(1, (long)repository.count().block());
+		assertNotNull(repository.findByProductId(3).block());
+		verify(deadLetterPublisher, never()).publish(any(), any());
+	}
+
+	@Test
+	void messagesAreAcknowledgedInTheOrderReceived() {
+		// Messages of different products complete in any order, but are only acknowledged once all earlier messages are
+		List<Acknowledgment> acknowledgments = new ArrayList<>();
+		List<Message<Event<Integer, Product>>> messages = new ArrayList<>();
+		for (int productId = 1; productId <= 10; productId++) {
+			Acknowledgment acknowledgment = mock(Acknowledgment.class);
+			acknowledgments.add(acknowledgment);
+			messages.add(MessageBuilder.withPayload(createProductEvent(productId))
+					.setHeader(KafkaHeaders.ACKNOWLEDGMENT, acknowledgment)
+					.build());
+		}
+
+		messageProcessor.apply(Flux.fromIterable(messages)).block();
+
+		assertEquals(10, (long)repository.count().block());
+		InOrder inOrder = inOrder(acknowledgments.toArray());
+		acknowledgments.forEach(acknowledgment -> inOrder.verify(acknowledgment).acknowledge());
+	}
+
+	@Test
+	void batchWithRedeliveredEvents() {
+		Event<Integer, Product> createEvent = createProductEvent(1);
+
+		batchMessageProcessor.accept(List.of(createEvent, createEvent, createProductEvent(2)));
+		batchMessageProcessor.accept(List.of(createEvent));
+
+		assertEquals(2, (long)repository.count().block());
+		verify(deadLetterPublisher, never()).publish(any(), any());
+	}
+
+	@Test
+	void batchOfEvents() {
+		batchMessageProcessor.accept(List.of(
+				createProductEvent(1),
+				createProductEvent(2),
+				new Event<>(DELETE, 1, null),
+				createProductEvent(3)));
+
+		assertNull(repository.findByProductId(1).block());
+		assertNotNull(repository.findByProductId(2).block());
+		assertNotNull(repository.findByProductId(3).block());
+		verify(deadLetterPublisher, never()).publish(any(), any());
+	}
+
+	@Test
+	void batchWithInvalidEventIsDeadLettered() {
+		sendCreateProductEvent(1);
+
+		// The duplicate of product 1 is a no-op, only the invalid product is dead-lettered
+		batchMessageProcessor.accept(List.of(createProductEvent(2), createProductEvent(1), createProductEvent(0), createProductEvent(3)));
+
+		assertEquals(3, (long)repository.count().block());
+		verify(deadLetterPublisher, times(1)).publish(argThat(event -> Integer.valueOf(0).equals(event.getKey())), any(InvalidInputException.class));
+	}
+
 	@Test
 	void getProductInvalidParameterString() {
 		getAndVerifyProduct("/no-integer", BAD_REQUEST)
@@ -122,14 +372,33 @@ class ProductServiceApplicationTests extends MongoTestBase {
 				.expectBody();
 	}
 
+	private long createLatencies(String name) {
+		Timer timer = meterRegistry.find(name).tag("eventType", CREATE.name()).timer();
+		return timer == null ? 0 : timer.count();
+	}
+
+	private double invalidInputErrors() {
+		Counter counter = meterRegistry.find("messaging.errors")
+				.tags("exception", InvalidInputException.class.getSimpleName(), "retryable", "false")
+				.counter();
+		return counter == null ? 0 : counter.count();
+	}
+
 	private void sendCreateProductEvent(int productId) {
+		sendEvent(createProductEvent(productId));
+	}
+
+	private Event<Integer, Product> createProductEvent(int productId) {
 		Product product = new Product(productId, "Name " + productId, productId, "SA");
-		Event<Integer, Product> event = new Event<>(CREATE, productId, product);
-		messageProcessor.accept(event);
+		return new Event<>(CREATE, productId, product);
 	}
 
 	private void sendDeleteProductEvent(int productId) {
 		Event<Integer, Product> event = new Event<>(DELETE, productId, null);
-		messageProcessor.accept(event);
+		sendEvent(event);
+	}
+
+	private void sendEvent(Event<Integer, Product> event) {
+		messageProcessor.apply(Flux.just(MessageBuilder.withPayload(event).build())).block();
 	}
 }
@@ -25,6 +25,7 @@ dependencies {
 
 	implementation("org.springframework.boot:spring-boot-starter-actuator")
 	implementation("org.springframework.boot:spring-boot-starter-webflux")
+	implementation("com.github.ben-manes.caffeine:caffeine")
 	implementation("org.mapstruct:mapstruct:${mapstructVersion}")
 
 	compileOnly("org.mapstruct:mapstruct-processor:${mapstructVersion}")
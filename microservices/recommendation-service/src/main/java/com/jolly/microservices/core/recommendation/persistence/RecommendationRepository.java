@@ -1,11 +1,29 @@
 package com.jolly.microservices.core.recommendation.persistence;
 
-import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
 
 /**
  * @author jolly
  */
-public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
+public interface RecommendationRepository extends ReactiveMongoRepository<RecommendationEntity, String>, RecommendationUpsertRepository {
     Flux<RecommendationEntity> findByProductId(int productId);
+
+    Flux<RecommendationEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    Mono<RecommendationEntity> findByProductIdAndRecommendationId(int productId, int recommendationId);
+
+    /**
+     * Keyset page on (productId, recommendationId), served by the prod-rec-id index.
+     */
+    Flux<RecommendationEntity> findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(int productId, int recommendationId, Pageable pageable);
+
+    /**
+     * Deletes the recommendations of the product with a single deleteMany, returns the number of deleted recommendations.
+     */
+    Mono<Long> deleteByProductId(int productId);
 }
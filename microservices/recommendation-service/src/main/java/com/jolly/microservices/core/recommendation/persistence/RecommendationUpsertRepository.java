@@ -0,0 +1,24 @@
+package com.jolly.microservices.core.recommendation.persistence;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Idempotent creates: a recommendation is inserted unless one with its productId and recommendationId exists, which is
+ * then left as is. Creating a recommendation again, e.g. from a replayed event, is a no-op instead of a duplicate key error.
+ *
+ * @author jolly
+ */
+public interface RecommendationUpsertRepository {
+
+    /**
+     * Returns true if the recommendation was inserted, false if it existed.
+     */
+    Mono<Boolean> upsert(RecommendationEntity entity);
+
+    /**
+     * Upserts the recommendations with a single bulk write, returns the number of recommendations inserted.
+     */
+    Mono<Integer> upsertAll(Collection<RecommendationEntity> entities);
+}
@@ -0,0 +1,59 @@
+package com.jolly.microservices.core.recommendation.persistence;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Upserts with $setOnInsert only, so a recommendation that exists is matched, by the prod-rec-id index, but not written.
+ *
+ * @author jolly
+ */
+class RecommendationUpsertRepositoryImpl implements RecommendationUpsertRepository {
+    private final ReactiveMongoOperations mongoOperations;
+
+    @Autowired
+    RecommendationUpsertRepositoryImpl(ReactiveMongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public Mono<Boolean> upsert(RecommendationEntity entity) {
+        return mongoOperations.upsert(byKey(entity), insertOnly(entity), RecommendationEntity.class)
+                .map(result -> result.getUpsertedId() != null);
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(Collection<RecommendationEntity> entities) {
+        if (entities.isEmpty()) {
+            return Mono.just(0);
+        }
+        ReactiveBulkOperations bulkOperations = mongoOperations.bulkOps(BulkMode.UNORDERED, RecommendationEntity.class);
+        entities.forEach(entity -> bulkOperations.upsert(byKey(entity), insertOnly(entity)));
+        return bulkOperations.execute().map(result -> result.getUpserts().size());
+    }
+
+    private static Query byKey(RecommendationEntity entity) {
+        return Query.query(where("productId").is(entity.getProductId()).and("recommendationId").is(entity.getRecommendationId()));
+    }
+
+    /**
+     * The productId and recommendationId are taken from the query on insert. Setting the version keeps it from being
+     * incremented on every match.
+     */
+    private static Update insertOnly(RecommendationEntity entity) {
+        return new Update()
+                .setOnInsert("author", entity.getAuthor())
+                .setOnInsert("rating", entity.getRating())
+                .setOnInsert("content", entity.getContent())
+                .setOnInsert("version", 0);
+    }
+}
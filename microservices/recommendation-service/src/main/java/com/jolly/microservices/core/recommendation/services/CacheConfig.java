@@ -0,0 +1,56 @@
+package com.jolly.microservices.core.recommendation.services;
+
+import com.jolly.microservices.api.core.recommendation.Recommendation;
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * @author jolly
+ */
+@Configuration
+public class CacheConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheConfig.class);
+
+    /**
+     * The recommendations of the products last read, cached by productId in front of the repository.
+     */
+    @Bean
+    public ReadThroughCache<Integer, List<Recommendation>> recommendationCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.recommendationCache.maxSize:10000}") long maxSize,
+            @Value("${app.recommendationCache.expireAfterWriteSeconds:600}") long expireAfterWriteSeconds,
+            @Value("${app.recommendationCache.expireAfterInvalidationMillis:5000}") long expireAfterInvalidationMillis,
+            @Value("${app.recommendationCache.loadTimeoutMillis:5000}") long loadTimeoutMillis
+    ) {
+        return new ReadThroughCache<>("recommendations", meterRegistry, maxSize,
+                Duration.ofSeconds(expireAfterWriteSeconds), Duration.ofMillis(expireAfterInvalidationMillis),
+                Duration.ofMillis(loadTimeoutMillis));
+    }
+
+    /**
+     * Subscribes to the recommendations destination without a consumer group and unpartitioned, i.e. every recommendation
+     * instance sees every event, also the ones of partitions consumed by other instances, and evicts the product from its own cache.
+     */
+    @Bean
+    public Consumer<Event<Integer, Object>> recommendationCacheInvalidator(ReadThroughCache<Integer, List<Recommendation>> recommendationCache) {
+        return event -> {
+            if (event.getKey() == null) {
+                LOG.warn("Ignores a {} event without key", event.getEventType());
+                return;
+            }
+
+            LOG.debug("Invalidate cached recommendations on {} event for productId: {}", event.getEventType(), event.getKey());
+            recommendationCache.evict(event.getKey());
+        };
+    }
+}
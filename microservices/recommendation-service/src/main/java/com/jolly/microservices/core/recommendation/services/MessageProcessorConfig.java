@@ -3,50 +3,109 @@ package com.jolly.microservices.core.recommendation.services;
 import com.jolly.microservices.api.core.recommendation.Recommendation;
 import com.jolly.microservices.api.core.recommendation.RecommendationService;
 import com.jolly.microservices.api.event.Event;
-import com.jolly.microservices.api.exceptions.EventProcessingException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.jolly.microservices.util.messaging.DeadLetterPublisher;
+import com.jolly.microservices.util.messaging.ErrorClassifier;
+import com.jolly.microservices.util.messaging.EventBatchProcessor;
+import com.jolly.microservices.util.messaging.EventDeduplicator;
+import com.jolly.microservices.util.messaging.EventLatencyRecorder;
+import com.jolly.microservices.util.messaging.ReactiveEventProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author jolly
  */
 @Configuration
 public class MessageProcessorConfig {
-    private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
-
     private final RecommendationService recommendationService;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final EventDeduplicator deduplicator;
+    private final ErrorClassifier errorClassifier;
+    private final EventLatencyRecorder latencyRecorder;
+    private final MeterRegistry meterRegistry;
+    private final int concurrency;
+    private final int maxPending;
+    private final int maxAttempts;
+    private final Duration backOffInitialInterval;
+    private final Duration backOffMaxInterval;
 
     @Autowired
-    public MessageProcessorConfig(RecommendationService recommendationService) {
+    public MessageProcessorConfig(
+            RecommendationService recommendationService,
+            DeadLetterPublisher deadLetterPublisher,
+            EventDeduplicator deduplicator,
+            ErrorClassifier errorClassifier,
+            EventLatencyRecorder latencyRecorder,
+            MeterRegistry meterRegistry,
+            @Value("${app.messaging.concurrency:8}") int concurrency,
+            @Value("${app.messaging.maxPending:1024}") int maxPending,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long backOffMaxInterval
+    ) {
         this.recommendationService = recommendationService;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.deduplicator = deduplicator;
+        this.errorClassifier = errorClassifier;
+        this.latencyRecorder = latencyRecorder;
+        this.meterRegistry = meterRegistry;
+        this.concurrency = concurrency;
+        this.maxPending = maxPending;
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = Duration.ofMillis(backOffInitialInterval);
+        this.backOffMaxInterval = Duration.ofMillis(backOffMaxInterval);
+    }
+
+    /**
+     * Consumes the events without blocking, the retry settings of the binding are applied by the processor to retryable errors.
+     */
+    @Bean
+    public Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> messageProcessor() {
+        ReactiveEventProcessor<Recommendation> processor = new ReactiveEventProcessor<>(
+                "recommendation",
+                this::createRecommendations,
+                recommendationService::deleteRecommendations,
+                deadLetterPublisher,
+                deduplicator,
+                errorClassifier,
+                latencyRecorder,
+                concurrency,
+                maxPending,
+                maxAttempts,
+                backOffInitialInterval,
+                backOffMaxInterval);
+        return processor::process;
     }
 
+    /**
+     * Consumes the events in batches, used by the streaming_batch profile.
+     */
     @Bean
-    public Consumer<Event<Integer, Recommendation>> messageProcessor() {
-        return event -> {
-            switch (event.getEventType()) {
-                case CREATE -> {
-                    Recommendation recommendation = event.getData();
-                    LOG.info("Create recommendation with ID: {}/{}", recommendation.productId(), recommendation.recommendationId());
-                    recommendationService.createRecommendation(recommendation).block();
-                }
-                case DELETE -> {
-                    int productId = event.getKey();
-                    LOG.info("Delete recommendations with productId: {}", productId);
-                    recommendationService.deleteRecommendations(productId).block();
-                }
-                default -> {
-                    String errorMessage = String.format("Incorrect event type: %s, expected CREATE or DELETE event", event.getEventType());
-                    LOG.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-                }
-            }
-            LOG.info("Message processing done");
-        };
+    public Consumer<List<Event<Integer, Recommendation>>> batchMessageProcessor() {
+        EventBatchProcessor<Recommendation> processor = new EventBatchProcessor<>(
+                "recommendation",
+                this::createRecommendations,
+                recommendationService::deleteRecommendations,
+                deadLetterPublisher,
+                deduplicator,
+                errorClassifier,
+                latencyRecorder,
+                meterRegistry);
+        return events -> processor.process(events).block();
+    }
+
+    private Mono<Void> createRecommendations(List<Recommendation> recommendations) {
+        return recommendations.size() == 1 ? recommendationService.createRecommendation(recommendations.get(0)).then() : recommendationService.createRecommendations(recommendations).then();
     }
 }
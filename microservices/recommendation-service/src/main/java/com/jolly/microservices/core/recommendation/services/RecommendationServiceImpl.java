@@ -3,19 +3,25 @@ package com.jolly.microservices.core.recommendation.services;
 import com.jolly.microservices.api.core.recommendation.Recommendation;
 import com.jolly.microservices.api.core.recommendation.RecommendationService;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
+import com.jolly.microservices.api.exceptions.NotFoundException;
 import com.jolly.microservices.core.recommendation.persistence.RecommendationEntity;
 import com.jolly.microservices.core.recommendation.persistence.RecommendationRepository;
+import com.jolly.microservices.util.cache.ReadThroughCache;
 import com.jolly.microservices.util.http.ServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static java.util.logging.Level.FINE;
 
@@ -29,15 +35,22 @@ public class RecommendationServiceImpl implements RecommendationService {
     private final ServiceUtil serviceUtil;
     private final RecommendationMapper mapper;
     private final RecommendationRepository repository;
+    private final ReadThroughCache<Integer, List<Recommendation>> recommendationCache;
+    private final int maxPageSize;
+
     @Autowired
     public RecommendationServiceImpl(
             ServiceUtil serviceUtil,
             RecommendationMapper mapper,
-            RecommendationRepository repository
+            RecommendationRepository repository,
+            ReadThroughCache<Integer, List<Recommendation>> recommendationCache,
+            @Value("${app.maxPageSize:100}") int maxPageSize
     ) {
         this.serviceUtil = serviceUtil;
         this.mapper = mapper;
         this.repository = repository;
+        this.recommendationCache = recommendationCache;
+        this.maxPageSize = maxPageSize;
     }
 
     @Override
@@ -48,14 +61,66 @@ public class RecommendationServiceImpl implements RecommendationService {
 
         RecommendationEntity entity = mapper.apiToEntity(body);
 
-        return repository.save(entity)
+        return repository.upsert(entity)
                 .log(LOG.getName(), FINE)
+                .doOnNext(inserted -> {
+                    if (!inserted) {
+                        LOG.debug("createRecommendation: recommendation {}/{} exists already, left as is", body.productId(), body.recommendationId());
+                    }
+                })
                 .onErrorMap(
                         DuplicateKeyException.class,
                         ex -> new InvalidInputException("Duplicate key, Product Id: " + body.productId() + ", Recommendation Id:" + body.recommendationId()))
+                // Before the result is emitted, so a read after the create never gets the cached recommendations from before it
+                .doOnTerminate(() -> recommendationCache.invalidate(body.productId()))
+                // The recommendation as stored, which is the existing one if the upsert left it as is
+                .flatMap(inserted -> inserted ? Mono.just(entity) : repository.findByProductIdAndRecommendationId(body.productId(), body.recommendationId())
+                        .switchIfEmpty(Mono.error(() -> new NotFoundException(String.format(
+                                "Recommendation %d/%d was deleted while being created", body.productId(), body.recommendationId())))))
+                .map(mapper::entityToApi);
+    }
+
+    @Override
+    public Flux<Recommendation> createRecommendations(List<Recommendation> body) {
+        body.forEach(recommendation -> {
+            if (recommendation.productId() < 1) {
+                throw new InvalidInputException("Invalid productId: " + recommendation.productId());
+            }
+        });
+
+        List<String> keys = body.stream().map(r -> r.productId() + "/" + r.recommendationId()).toList();
+        if (Set.copyOf(keys).size() < keys.size()) {
+            throw new InvalidInputException("Duplicate key in bulk create of recommendations, keys: " + keys);
+        }
+
+        List<RecommendationEntity> entities = body.stream().map(mapper::apiToEntity).toList();
+
+        // A single bulk write, recommendations that exist already are left as is
+        return repository.upsertAll(entities)
+                .log(LOG.getName(), FINE)
+                .doOnNext(inserted -> LOG.debug("createRecommendations: inserted {} of {} recommendations", inserted, body.size()))
+                .onErrorMap(
+                        DuplicateKeyException.class,
+                        ex -> new InvalidInputException("Duplicate key in bulk create of " + body.size() + " recommendations: " + ex.getMessage()))
+                .doOnTerminate(() -> recommendationCache.invalidateAll(body.stream().map(Recommendation::productId).collect(Collectors.toSet())))
+                .flatMapMany(inserted -> inserted == entities.size() ? Flux.fromIterable(entities) : stored(entities))
                 .map(mapper::entityToApi);
     }
 
+    /**
+     * The recommendations as stored, in the order given, for a bulk create that left some existing ones as is.
+     */
+    private Flux<RecommendationEntity> stored(List<RecommendationEntity> entities) {
+        Set<Integer> productIds = entities.stream().map(RecommendationEntity::getProductId).collect(Collectors.toSet());
+        return repository.findByProductIdIn(productIds)
+                .collectMap(RecommendationServiceImpl::key)
+                .flatMapIterable(stored -> entities.stream().map(entity -> stored.get(key(entity))).filter(Objects::nonNull).toList());
+    }
+
+    private static String key(RecommendationEntity entity) {
+        return entity.getProductId() + "/" + entity.getRecommendationId();
+    }
+
     @Override
     public Flux<Recommendation> getRecommendations(int productId) {
         if (productId < 1) {
@@ -64,17 +129,56 @@ public class RecommendationServiceImpl implements RecommendationService {
 
         LOG.info("Will get recommendations for product with id={}", productId);
 
-        return repository.findByProductId(productId)
+        return recommendationCache.get(productId, id -> repository.findByProductId(id)
+                        .log(LOG.getName(), FINE)
+                        .map(this::toApi)
+                        .collectList())
+                .flatMapIterable(recommendations -> recommendations);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(int productId, Integer after, int limit) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + maxPageSize);
+        }
+
+        LOG.info("Will get a page of {} recommendations after recommendationId={} for product with id={}", limit, after, productId);
+
+        return repository.findByProductIdAndRecommendationIdGreaterThanOrderByRecommendationIdAsc(
+                        productId, after == null ? Integer.MIN_VALUE : after, PageRequest.ofSize(limit))
                 .log(LOG.getName(), FINE)
-                .map(mapper::entityToApi)
-                .map(e -> new Recommendation(
-                        e.productId(),
-                        e.recommendationId(),
-                        e.author(),
-                        e.rate(),
-                        e.content(),
-                        serviceUtil.getServiceAddress()
-                ));
+                .map(this::toApi);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(List<Integer> productIds) {
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+
+        LOG.info("Will get recommendations for products with ids={}", productIds);
+
+        return repository.findByProductIdIn(productIds)
+                .log(LOG.getName(), FINE)
+                .map(this::toApi);
+    }
+
+    private Recommendation toApi(RecommendationEntity entity) {
+        Recommendation recommendation = mapper.entityToApi(entity);
+        return new Recommendation(
+                recommendation.productId(),
+                recommendation.recommendationId(),
+                recommendation.author(),
+                recommendation.rate(),
+                recommendation.content(),
+                serviceUtil.getServiceAddress()
+        );
     }
 
     @Override
@@ -84,6 +188,9 @@ public class RecommendationServiceImpl implements RecommendationService {
         }
 
         LOG.debug("deleteRecommendations: tries to delete recommendations for the product with productId: {}", productId);
-        return repository.deleteAll(repository.findByProductId(productId));
+        return repository.deleteByProductId(productId)
+                .log(LOG.getName(), FINE)
+                .doOnTerminate(() -> recommendationCache.invalidate(productId))
+                .then();
     }
 }
@@ -78,6 +78,38 @@ public class PersistenceTest extends MongoTestBase {
         });
     }
 
+    @Test
+    void upsert() {
+        // An existing recommendation is left as is
+        Assertions.assertFalse(repository.upsert(new RecommendationEntity(1, 2, "a2", 4, "c2")).block());
+        assertEqualsRecommendation(savedEntity, repository.findById(savedEntity.getId()).block());
+
+        Assertions.assertTrue(repository.upsert(new RecommendationEntity(1, 3, "a", 3, "c")).block());
+        List<RecommendationEntity> entityList = repository.findByProductId(1).collectList().block();
+        MatcherAssert.assertThat(entityList, hasSize(2));
+    }
+
+    @Test
+    void upsertAll() {
+        List<RecommendationEntity> entities = List.of(
+                new RecommendationEntity(1, 2, "a2", 4, "c2"),
+                new RecommendationEntity(1, 3, "a", 3, "c"),
+                new RecommendationEntity(2, 2, "a", 3, "c"));
+
+        Assertions.assertEquals(2, repository.upsertAll(entities).block());
+        Assertions.assertEquals(0, repository.upsertAll(entities).block());
+        Assertions.assertEquals(3, (long)repository.count().block());
+    }
+
+    @Test
+    void deleteByProductId() {
+        repository.save(new RecommendationEntity(1, 3, "a", 3, "c")).block();
+        repository.save(new RecommendationEntity(2, 2, "a", 3, "c")).block();
+
+        Assertions.assertEquals(2, repository.deleteByProductId(1).block());
+        Assertions.assertEquals(1, (long)repository.count().block());
+    }
+
     @Test
     void optimisticLockError() {
 
@@ -4,20 +4,38 @@ import com.jolly.microservices.api.core.recommendation.Recommendation;
 import com.jolly.microservices.api.event.Event;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
 import com.jolly.microservices.core.recommendation.persistence.RecommendationRepository;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import com.jolly.microservices.util.messaging.DeadLetterPublisher;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import static com.jolly.microservices.api.event.Event.Type.CREATE;
 import static com.jolly.microservices.api.event.Event.Type.DELETE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
@@ -29,13 +47,32 @@ class RecommendationServiceApplicationTests extends MongoTestBase {
 	@Autowired
 	private RecommendationRepository repository;
 
+	@Autowired
+	private ReadThroughCache<Integer, List<Recommendation>> recommendationCache;
+
+	@Autowired
+	@Qualifier("recommendationCacheInvalidator")
+	private Consumer<Event<Integer, Object>> recommendationCacheInvalidator;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Autowired
 	@Qualifier("messageProcessor")
-	private Consumer<Event<Integer, Recommendation>> messageProcessor;
+	private Function<Flux<Message<Event<Integer, Recommendation>>>, Mono<Void>> messageProcessor;
+
+	@Autowired
+	@Qualifier("batchMessageProcessor")
+	private Consumer<List<Event<Integer, Recommendation>>> batchMessageProcessor;
+
+	@MockBean
+	private DeadLetterPublisher deadLetterPublisher;
 
 	@BeforeEach
 	void setupDb() {
+		when(deadLetterPublisher.publish(any(), any())).thenReturn(Mono.empty());
 		repository.deleteAll().block();
+		recommendationCache.invalidateAll();
 	}
 
 	@Test
@@ -56,7 +93,76 @@ class RecommendationServiceApplicationTests extends MongoTestBase {
 	}
 
 	@Test
-	void duplicateError() {
+	void getRecommendationsByProductIds() {
+
+		sendCreateRecommendationEvent(1, 1);
+		sendCreateRecommendationEvent(1, 2);
+		sendCreateRecommendationEvent(2, 1);
+		sendCreateRecommendationEvent(3, 1);
+
+		getAndVerifyRecommendationsByProductId("?productIds=1,2", OK)
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	void getRecommendationsPage() {
+		sendCreateRecommendationEvent(1, 1);
+		sendCreateRecommendationEvent(1, 2);
+		sendCreateRecommendationEvent(1, 3);
+		sendCreateRecommendationEvent(2, 1);
+
+		getAndVerifyRecommendationsByProductId("?productId=1&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].recommendationId").isEqualTo(1)
+				.jsonPath("$[1].recommendationId").isEqualTo(2);
+
+		getAndVerifyRecommendationsByProductId("?productId=1&limit=2&after=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].recommendationId").isEqualTo(3);
+
+		getAndVerifyRecommendationsByProductId("?productId=1&limit=2&after=3", OK)
+				.jsonPath("$.length()").isEqualTo(0);
+	}
+
+	@Test
+	void getRecommendationsPageInvalidLimit() {
+		getAndVerifyRecommendationsByProductId("?productId=1&limit=0", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/recommendation")
+				.jsonPath("$.message").isEqualTo("Invalid limit: 0, must be between 1 and 100");
+	}
+
+	@Test
+	void bulkCreateRecommendations() {
+		int productId = 1;
+
+		List<Recommendation> recommendations = IntStream.rangeClosed(1, 3)
+				.mapToObj(id -> new Recommendation(productId, id, "Author " + id, id, "Content " + id, "SA"))
+				.toList();
+		sendEvent(Event.bulkCreate(productId, recommendations));
+
+		assertEquals(3, (long)repository.findByProductId(productId).count().block());
+	}
+
+	@Test
+	void batchWithInvalidEventIsDeadLettered() {
+		sendCreateRecommendationEvent(1, 1);
+
+		// The duplicate of recommendation 1/1 is a no-op, only the invalid recommendation is dead-lettered
+		batchMessageProcessor.accept(List.of(
+				createRecommendationEvent(1, 2),
+				createRecommendationEvent(1, 1),
+				createRecommendationEvent(0, 1),
+				new Event<>(DELETE, 2, null),
+				createRecommendationEvent(2, 1),
+				createRecommendationEvent(1, 3)));
+
+		assertEquals(3, (long)repository.findByProductId(1).count().block());
+		assertEquals(1, (long)repository.findByProductId(2).count().block());
+		verify(deadLetterPublisher, times(1)).publish(argThat(event -> Integer.valueOf(0).equals(event.getKey())), any(InvalidInputException.class));
+	}
+
+	@Test
+	void duplicateCreateIsNoOp() {
 
 		int productId = 1;
 		int recommendationId = 1;
@@ -65,15 +171,80 @@ class RecommendationServiceApplicationTests extends MongoTestBase {
 
 		assertEquals(1, (long)repository.count().block());
 
-		InvalidInputException thrown = assertThrows(
-				InvalidInputException.class,
-				() -> sendCreateRecommendationEvent(productId, recommendationId),
-				"Expected a InvalidInputException here!");
-		assertEquals("Duplicate key, Product Id: 1, Recommendation Id:1", thrown.getMessage());
+		// Creating a recommendation that exists, e.g. replaying its event, leaves it as is instead of failing on the duplicate key
+		sendCreateRecommendationEvent(productId, recommendationId);
+		verify(deadLetterPublisher, never()).publish(any(), any());
 
 		assertEquals(1, (long)repository.count().block());
 	}
 
+	@Test
+	void recommendationsAreCachedUntilEvicted() {
+
+		int productId = 1;
+
+		sendCreateRecommendationEvent(productId, 1);
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(1);
+
+		// Removed behind the back of the cache, the recommendations are still served from it
+		repository.deleteAll().block();
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(1);
+
+		// Until a create or delete event of the product evicts them
+		sendCreateRecommendationEvent(productId, 2);
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].recommendationId").isEqualTo(2);
+
+		sendDeleteRecommendationEvent(productId);
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(0);
+
+		client.get()
+				.uri("/actuator/metrics/cache.gets?tag=cache:recommendations&tag=result:hit")
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.measurements[0].value").value(hits -> assertTrue(((Number) hits).doubleValue() >= 1));
+		assertNotNull(meterRegistry.find("cache.hit.ratio").tag("cache", "recommendations").gauge());
+	}
+
+	@Test
+	void restDeleteEvictsRecommendations() {
+		int productId = 1;
+
+		sendCreateRecommendationEvent(productId, 1);
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(1);
+
+		client.delete()
+				.uri("/recommendation?productId=" + productId)
+				.exchange()
+				.expectStatus().isOk();
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(0);
+	}
+
+	@Test
+	void recommendationsWrittenByOtherInstanceAreEvictedOnTheirEvent() {
+		int productId = 1;
+
+		sendCreateRecommendationEvent(productId, 1);
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(1);
+
+		// Deleted by another instance, which publishes the event every instance sees
+		repository.deleteAll().block();
+		recommendationCacheInvalidator.accept(new Event<>(DELETE, productId, null));
+		getAndVerifyRecommendationsByProductId(productId, OK)
+				.jsonPath("$.length()").isEqualTo(0);
+
+		assertTrue(meterRegistry.get("cache.invalidations").tags("cache", "recommendations").counter().count() > 0);
+	}
+
 	@Test
 	void deleteRecommendations() {
 
@@ -139,11 +310,19 @@ class RecommendationServiceApplicationTests extends MongoTestBase {
 	private void sendCreateRecommendationEvent(int productId, int recommendationId) {
 		Recommendation recommendation = new Recommendation(productId, recommendationId, "Author " + recommendationId, recommendationId, "Content " + recommendationId, "SA");
 		Event<Integer, Recommendation> event = new Event<>(CREATE, productId, recommendation);
-		messageProcessor.accept(event);
+		sendEvent(event);
+	}
+
+	private Event<Integer, Recommendation> createRecommendationEvent(int productId, int id) {
+		return new Event<>(CREATE, productId, new Recommendation(productId, id, "Author " + id, id, "Content " + id, "SA"));
 	}
 
 	private void sendDeleteRecommendationEvent(int productId) {
 		Event<Integer, Recommendation> event = new Event<>(DELETE, productId, null);
-		messageProcessor.accept(event);
+		sendEvent(event);
+	}
+
+	private void sendEvent(Event<Integer, Recommendation> event) {
+		messageProcessor.apply(Flux.just(MessageBuilder.withPayload(event).build())).block();
 	}
 }
@@ -18,6 +18,7 @@ repositories {
 val mapstructVersion by extra { "1.5.5.Final" }
 val testcontainersVersion by extra { "1.18.3" }
 val mysqlConnectorVersion by extra { "8.1.0" }
+val r2dbcMysqlVersion by extra { "1.0.2" }
 val springCloudVersion by extra { "2022.0.4" }
 
 dependencies {
@@ -26,6 +27,7 @@ dependencies {
 
 	implementation("org.springframework.boot:spring-boot-starter-actuator")
 	implementation("org.springframework.boot:spring-boot-starter-webflux")
+	implementation("com.github.ben-manes.caffeine:caffeine")
 	implementation("org.mapstruct:mapstruct:${mapstructVersion}")
 
 	compileOnly("org.mapstruct:mapstruct-processor:${mapstructVersion}")
@@ -34,6 +36,8 @@ dependencies {
 
 	implementation("org.springframework.boot:spring-boot-starter-data-jpa")
 	implementation("com.mysql:mysql-connector-j:${mysqlConnectorVersion}")
+	implementation("org.springframework.boot:spring-boot-starter-data-r2dbc")
+	implementation("io.asyncer:r2dbc-mysql:${r2dbcMysqlVersion}")
 	implementation(platform("org.testcontainers:testcontainers-bom:${testcontainersVersion}"))
 	testImplementation("org.testcontainers:testcontainers")
 	testImplementation("org.testcontainers:junit-jupiter")
@@ -57,3 +61,21 @@ dependencyManagement {
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+tasks.test {
+	useJUnitPlatform {
+		excludeTags("load")
+	}
+}
+
+// Runs the load tests only, e.g. "./gradlew :microservices:review-service:loadTest"
+tasks.register<Test>("loadTest") {
+	description = "Runs the load tests."
+	group = "verification"
+	testClassesDirs = sourceSets.test.get().output.classesDirs
+	classpath = sourceSets.test.get().runtimeClasspath
+	useJUnitPlatform {
+		includeTags("load")
+	}
+	testLogging.showStandardStreams = true
+}
@@ -1,36 +1,79 @@
 package com.jolly.microservices.core.review;
 
+import com.jolly.microservices.util.messaging.SaturationSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.TypeExcludeFilter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 @SpringBootApplication
-@ComponentScan("com.jolly")
+@ComponentScan(value = "com.jolly", excludeFilters = @ComponentScan.Filter(type = FilterType.CUSTOM, classes = TypeExcludeFilter.class))
 public class ReviewServiceApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(ReviewServiceApplication.class, args);
 	}
 
-	private final Integer threadPoolSize;
-	private final Integer taskQueueSize;
+	private final ThreadPoolExecutor jdbcExecutor;
 
 	@Autowired
 	public ReviewServiceApplication(
 			@Value("${app.threadPoolSize:10}") Integer threadPoolSize,
 			@Value("${app.taskQueueSize:100}") Integer taskQueueSize
 	) {
-		this.threadPoolSize = threadPoolSize;
-		this.taskQueueSize = taskQueueSize;
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("jdbc-pool-");
+		threadFactory.setDaemon(true);
+		this.jdbcExecutor = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(threadPoolSize * taskQueueSize), threadFactory);
+		this.jdbcExecutor.allowCoreThreadTimeOut(true);
 	}
 
+	/**
+	 * Runs the blocking JDBC calls on threadPoolSize threads with up to taskQueueSize queued tasks per thread.
+	 * A plain thread pool instead of a bounded elastic scheduler, so its queue depth can be watched.
+	 */
 	@Bean
 	public Scheduler jdbcScheduler() {
-		return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "jdbc-pool");
+		return Schedulers.fromExecutorService(jdbcExecutor, "jdbc-pool");
+	}
+
+	/**
+	 * Size, active threads and queued tasks of the JDBC thread pool, as executor.* metrics tagged name=jdbc-pool.
+	 */
+	@Bean
+	public MeterBinder jdbcExecutorMetrics() {
+		return new ExecutorServiceMetrics(jdbcExecutor, "jdbc-pool", List.of());
+	}
+
+	/**
+	 * Fill level of the task queue of the JDBC thread pool, tasks are rejected once it is full.
+	 */
+	@Bean
+	public SaturationSource jdbcSchedulerSaturation() {
+		return SaturationSource.of("jdbc-pool", () -> {
+			BlockingQueue<Runnable> queue = jdbcExecutor.getQueue();
+			return (double) queue.size() / (queue.size() + queue.remainingCapacity());
+		});
+	}
+
+	@PreDestroy
+	public void shutdownJdbcExecutor() {
+		jdbcExecutor.shutdown();
 	}
 }
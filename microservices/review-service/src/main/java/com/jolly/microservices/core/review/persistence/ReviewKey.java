@@ -0,0 +1,16 @@
+package com.jolly.microservices.core.review.persistence;
+
+/**
+ * The unique key of a review, its productId and reviewId.
+ *
+ * @author jolly
+ */
+public record ReviewKey(int productId, int reviewId) {
+    public static ReviewKey of(ReviewEntity entity) {
+        return new ReviewKey(entity.getProductId(), entity.getReviewId());
+    }
+
+    public static ReviewKey of(ReviewR2dbcEntity entity) {
+        return new ReviewKey(entity.getProductId(), entity.getReviewId());
+    }
+}
@@ -0,0 +1,87 @@
+package com.jolly.microservices.core.review.persistence;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * The reviews table as mapped by the r2dbc profile, see {@link ReviewEntity} for the JPA mapping of the same table.
+ *
+ * @author jolly
+ */
+@Table("reviews")
+public class ReviewR2dbcEntity {
+    @Id private Integer id;
+    private int version;
+    private int productId;
+    private int reviewId;
+    private String author;
+    private String subject;
+    private String content;
+
+    public ReviewR2dbcEntity() {
+    }
+
+    public ReviewR2dbcEntity(int productId, int reviewId, String author, String subject, String content) {
+        this.productId = productId;
+        this.reviewId = reviewId;
+        this.author = author;
+        this.subject = subject;
+        this.content = content;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getReviewId() {
+        return reviewId;
+    }
+
+    public void setReviewId(int reviewId) {
+        this.reviewId = reviewId;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public void setAuthor(String author) {
+        this.author = author;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+}
@@ -0,0 +1,44 @@
+package com.jolly.microservices.core.review.persistence;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * The queries of {@link ReviewRepository} for the r2dbc profile.
+ *
+ * @author jolly
+ */
+public interface ReviewR2dbcRepository extends ReactiveCrudRepository<ReviewR2dbcEntity, Integer> {
+    Flux<ReviewR2dbcEntity> findByProductId(int productId);
+
+    Flux<ReviewR2dbcEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    Mono<ReviewR2dbcEntity> findByProductIdAndReviewId(int productId, int reviewId);
+
+    /**
+     * Keyset page on (productId, reviewId), served by the reviews_unique_idx index.
+     */
+    Flux<ReviewR2dbcEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int reviewId, Pageable pageable);
+
+    /**
+     * Deletes the reviews of the product with a single DELETE.
+     */
+    @Modifying
+    @Query("DELETE FROM reviews WHERE product_id = :productId")
+    Mono<Integer> deleteByProductId(int productId);
+
+    /**
+     * Inserts the review unless one with its productId and reviewId exists, which is then left as is, see
+     * {@link ReviewRepository#upsert(ReviewEntity)}. A single statement, the no-op update makes a duplicate key a match.
+     */
+    @Modifying
+    @Query("INSERT INTO reviews (id, version, product_id, review_id, author, subject, content) "
+            + "VALUES (:id, 0, :productId, :reviewId, :author, :subject, :content) ON DUPLICATE KEY UPDATE id = id")
+    Mono<Integer> upsert(int id, int productId, int reviewId, String author, String subject, String content);
+}
@@ -1,14 +1,109 @@
 package com.jolly.microservices.core.review.persistence;
 
+import com.jolly.microservices.api.core.review.Review;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
+ * The find...Reviews queries select the columns straight into {@link Review} records with the given serviceAddress,
+ * without entities in the persistence context to snapshot and map.
+ *
  * @author jolly
  */
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
+    String SELECT_REVIEW = "SELECT new com.jolly.microservices.api.core.review.Review("
+            + "r.productId, r.reviewId, r.author, r.subject, r.content, cast(:serviceAddress as String)) FROM ReviewEntity r ";
+
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    @Transactional(readOnly = true)
+    List<ReviewEntity> findByProductIdIn(Collection<Integer> productIds);
+
+    @Transactional(readOnly = true)
+    Optional<ReviewEntity> findByProductIdAndReviewId(int productId, int reviewId);
+
+    @Transactional(readOnly = true)
+    boolean existsByProductIdAndReviewId(int productId, int reviewId);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT new com.jolly.microservices.core.review.persistence.ReviewKey(r.productId, r.reviewId) "
+            + "FROM ReviewEntity r WHERE r.productId IN :productIds")
+    List<ReviewKey> findKeysByProductIdIn(Collection<Integer> productIds);
+
+    /**
+     * Deletes the reviews of the product with a single DELETE, returns the number of deleted reviews.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ReviewEntity r WHERE r.productId = :productId")
+    int deleteByProductId(int productId);
+
+    /**
+     * Inserts the review unless one with its productId and reviewId exists, which is then left as is, so creating a review
+     * again, e.g. from a replayed event, is a no-op instead of a duplicate key error. Returns true if the review was inserted.
+     * <p>
+     * Not run in a transaction of its own: if a concurrent create inserts the review between the check and the insert,
+     * the insert fails on the unique index when it commits, and the review is then found and left as is.
+     */
+    default boolean upsert(ReviewEntity entity) {
+        if (existsByProductIdAndReviewId(entity.getProductId(), entity.getReviewId())) {
+            return false;
+        }
+        try {
+            save(entity);
+            return true;
+        } catch (DataIntegrityViolationException dive) {
+            if (existsByProductIdAndReviewId(entity.getProductId(), entity.getReviewId())) {
+                return false;
+            }
+            throw dive;
+        }
+    }
+
+    /**
+     * Upserts the reviews in one transaction, the new ones are inserted as JDBC batches. Reviews given more than once
+     * are inserted once, the first one wins. Returns the inserted reviews.
+     */
+    @Transactional
+    default List<ReviewEntity> upsertAll(Collection<ReviewEntity> entities) {
+        Map<ReviewKey, ReviewEntity> distinct = new LinkedHashMap<>();
+        entities.forEach(entity -> distinct.putIfAbsent(ReviewKey.of(entity), entity));
+
+        Set<ReviewKey> existing = Set.copyOf(findKeysByProductIdIn(
+                distinct.keySet().stream().map(ReviewKey::productId).collect(Collectors.toSet())));
+        List<ReviewEntity> inserted = distinct.entrySet().stream()
+                .filter(entry -> !existing.contains(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .toList();
+        saveAll(inserted);
+        return inserted;
+    }
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_REVIEW + "WHERE r.productId = :productId")
+    List<Review> findReviewsByProductId(int productId, String serviceAddress);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_REVIEW + "WHERE r.productId IN :productIds")
+    List<Review> findReviewsByProductIdIn(Collection<Integer> productIds, String serviceAddress);
+
+    /**
+     * Keyset page on (productId, reviewId), served by the reviews_unique_idx index.
+     */
+    @Transactional(readOnly = true)
+    @Query(SELECT_REVIEW + "WHERE r.productId = :productId AND r.reviewId > :reviewId ORDER BY r.reviewId ASC")
+    List<Review> findReviewsPage(int productId, int reviewId, String serviceAddress, Pageable pageable);
 }
@@ -0,0 +1,96 @@
+package com.jolly.microservices.core.review.services;
+
+import com.jolly.microservices.api.core.review.Review;
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * @author jolly
+ */
+@Configuration
+public class CacheConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(CacheConfig.class);
+
+    /**
+     * The reviews of a product, cached by productId in front of the repository. Bounded by the estimated size of the
+     * cached reviews in bytes.
+     */
+    @Bean
+    public ReadThroughCache<Integer, List<Review>> reviewCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.reviewCache.maxSizeBytes:16000000}") long maxSizeBytes,
+            @Value("${app.reviewCache.expireAfterWriteSeconds:600}") long expireAfterWriteSeconds,
+            @Value("${app.reviewCache.expireAfterInvalidationMillis:5000}") long expireAfterInvalidationMillis,
+            @Value("${app.reviewCache.loadTimeoutMillis:5000}") long loadTimeoutMillis
+    ) {
+        return new ReadThroughCache<>("reviews", meterRegistry, maxSizeBytes, CacheConfig::estimateSize,
+                Duration.ofSeconds(expireAfterWriteSeconds), Duration.ofMillis(expireAfterInvalidationMillis),
+                Duration.ofMillis(loadTimeoutMillis));
+    }
+
+    /**
+     * Subscribes to the reviews destination without a consumer group and unpartitioned, i.e. every review instance sees
+     * every event, also the ones of partitions consumed by other instances, and evicts the product from its own cache.
+     */
+    @Bean
+    public Consumer<Event<Integer, Object>> reviewCacheInvalidator(ReadThroughCache<Integer, List<Review>> reviewCache) {
+        return event -> {
+            if (event.getKey() == null) {
+                LOG.warn("Ignores a {} event without key", event.getEventType());
+                return;
+            }
+
+            LOG.debug("Invalidate cached reviews on {} event for productId: {}", event.getEventType(), event.getKey());
+            reviewCache.evict(event.getKey());
+        };
+    }
+
+    /**
+     * Groups the loaded reviews by product, products without reviews are cached with an empty list.
+     */
+    static Map<Integer, List<Review>> byProductId(Collection<Integer> productIds, List<Review> reviews) {
+        Map<Integer, List<Review>> byProductId = new HashMap<>(reviews.stream().collect(Collectors.groupingBy(Review::productId)));
+        productIds.forEach(productId -> byProductId.putIfAbsent(productId, List.of()));
+        return byProductId;
+    }
+
+    /**
+     * The reviews of the products in the order of the productIds.
+     */
+    static List<Review> inOrder(Collection<Integer> productIds, Map<Integer, List<Review>> byProductId) {
+        return productIds.stream()
+                .distinct()
+                .flatMap(productId -> byProductId.getOrDefault(productId, List.of()).stream())
+                .toList();
+    }
+
+    /**
+     * A rough estimate of the heap used by the reviews: object headers and references, and two bytes per character.
+     */
+    private static int estimateSize(List<Review> reviews) {
+        long size = 64;
+        for (Review review : reviews) {
+            size += 48 + estimateSize(review.author()) + estimateSize(review.subject()) + estimateSize(review.content())
+                    + estimateSize(review.serviceAddress());
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    private static long estimateSize(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+}
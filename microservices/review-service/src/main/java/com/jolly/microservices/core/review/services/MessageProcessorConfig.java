@@ -3,50 +3,116 @@ package com.jolly.microservices.core.review.services;
 import com.jolly.microservices.api.core.review.Review;
 import com.jolly.microservices.api.core.review.ReviewService;
 import com.jolly.microservices.api.event.Event;
-import com.jolly.microservices.api.exceptions.EventProcessingException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.jolly.microservices.util.messaging.DeadLetterPublisher;
+import com.jolly.microservices.util.messaging.ErrorClassifier;
+import com.jolly.microservices.util.messaging.EventBatchProcessor;
+import com.jolly.microservices.util.messaging.EventDeduplicator;
+import com.jolly.microservices.util.messaging.EventLatencyRecorder;
+import com.jolly.microservices.util.messaging.ReactiveEventProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author jolly
  */
 @Configuration
 public class MessageProcessorConfig {
-    private static final Logger LOG = LoggerFactory.getLogger(MessageProcessorConfig.class);
-
     private final ReviewService reviewService;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final EventDeduplicator deduplicator;
+    private final ErrorClassifier errorClassifier;
+    private final EventLatencyRecorder latencyRecorder;
+    private final MeterRegistry meterRegistry;
+    private final int concurrency;
+    private final int maxPending;
+    private final int maxAttempts;
+    private final Duration backOffInitialInterval;
+    private final Duration backOffMaxInterval;
 
     @Autowired
-    public MessageProcessorConfig(ReviewService reviewService) {
+    public MessageProcessorConfig(
+            ReviewService reviewService,
+            DeadLetterPublisher deadLetterPublisher,
+            EventDeduplicator deduplicator,
+            ErrorClassifier errorClassifier,
+            EventLatencyRecorder latencyRecorder,
+            MeterRegistry meterRegistry,
+            @Value("${app.messaging.concurrency:8}") int concurrency,
+            @Value("${app.messaging.maxPending:1024}") int maxPending,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.maxAttempts:3}") int maxAttempts,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffInitialInterval:1000}") long backOffInitialInterval,
+            @Value("${spring.cloud.stream.bindings.messageProcessor-in-0.consumer.backOffMaxInterval:10000}") long backOffMaxInterval
+    ) {
         this.reviewService = reviewService;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.deduplicator = deduplicator;
+        this.errorClassifier = errorClassifier;
+        this.latencyRecorder = latencyRecorder;
+        this.meterRegistry = meterRegistry;
+        this.concurrency = concurrency;
+        this.maxPending = maxPending;
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = Duration.ofMillis(backOffInitialInterval);
+        this.backOffMaxInterval = Duration.ofMillis(backOffMaxInterval);
     }
 
+    /**
+     * The processor of the messageProcessor binding, a bean so the {@code SaturationGuard} can hold it before stopping the binding.
+     */
     @Bean
-    public Consumer<Event<Integer, Review>> messageProcessor() {
-        return event -> {
-            switch (event.getEventType()) {
-                case CREATE -> {
-                    Review review = event.getData();
-                    LOG.info("Create review with ID: {}/{}", review.productId(), review.reviewId());
-                    reviewService.createReview(review).block();
-                }
-                case DELETE -> {
-                    int productId = event.getKey();
-                    LOG.info("Delete reviews with productId: {}", productId);
-                    reviewService.deleteReviews(productId).block();
-                }
-                default -> {
-                    String errorMessage = String.format("Incorrect event type: %s, expected CREATE or DELETE event", event.getEventType());
-                    LOG.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-                }
-            }
-            LOG.info("Message processing done");
-        };
+    public ReactiveEventProcessor<Review> reviewEventProcessor() {
+        return new ReactiveEventProcessor<>(
+                "review",
+                this::createReviews,
+                reviewService::deleteReviews,
+                deadLetterPublisher,
+                deduplicator,
+                errorClassifier,
+                latencyRecorder,
+                concurrency,
+                maxPending,
+                maxAttempts,
+                backOffInitialInterval,
+                backOffMaxInterval);
+    }
+
+    /**
+     * Consumes the events without blocking, the retry settings of the binding are applied by the processor to retryable errors.
+     */
+    @Bean
+    public Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageProcessor(ReactiveEventProcessor<Review> reviewEventProcessor) {
+        return reviewEventProcessor::process;
+    }
+
+    /**
+     * Consumes the events in batches, used by the streaming_batch profile.
+     */
+    @Bean
+    public Consumer<List<Event<Integer, Review>>> batchMessageProcessor() {
+        EventBatchProcessor<Review> processor = new EventBatchProcessor<>(
+                "review",
+                this::createReviews,
+                reviewService::deleteReviews,
+                deadLetterPublisher,
+                deduplicator,
+                errorClassifier,
+                latencyRecorder,
+                meterRegistry);
+        return events -> processor.process(events).block();
+    }
+
+    private Mono<Void> createReviews(List<Review> reviews) {
+        return reviews.size() == 1 ? reviewService.createReview(reviews.get(0)).then() : reviewService.createReviews(reviews).then();
     }
 }
@@ -0,0 +1,238 @@
+package com.jolly.microservices.core.review.services;
+
+import com.jolly.microservices.api.core.review.Review;
+import com.jolly.microservices.api.core.review.ReviewService;
+import com.jolly.microservices.api.exceptions.InvalidInputException;
+import com.jolly.microservices.api.exceptions.NotFoundException;
+import com.jolly.microservices.core.review.persistence.ReviewKey;
+import com.jolly.microservices.core.review.persistence.ReviewR2dbcEntity;
+import com.jolly.microservices.core.review.persistence.ReviewR2dbcRepository;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import com.jolly.microservices.util.http.ServiceUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The review service on R2DBC, active with the r2dbc profile instead of the JPA based {@link ReviewServiceImpl}.
+ * Nothing blocks, so the number of concurrent requests is bounded by the R2DBC connection pool instead of the JDBC thread pool.
+ * <p>
+ * The ids are taken from the reviews_seq table the same way Hibernate's pooled optimizer does, so both implementations
+ * can be run against the same database.
+ *
+ * @author jolly
+ */
+@Profile("r2dbc")
+@RestController
+public class R2dbcReviewServiceImpl implements ReviewService {
+    private static final Logger LOG = LoggerFactory.getLogger(R2dbcReviewServiceImpl.class);
+
+    /**
+     * The allocationSize of the id generator of {@code ReviewEntity}.
+     */
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    private final ServiceUtil serviceUtil;
+    private final ReviewR2dbcRepository repository;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final ReviewMapper mapper;
+    private final ReadThroughCache<Integer, List<Review>> reviewCache;
+    private final int maxPageSize;
+
+    @Autowired
+    public R2dbcReviewServiceImpl(
+            ServiceUtil serviceUtil,
+            ReviewR2dbcRepository repository,
+            DatabaseClient databaseClient,
+            TransactionalOperator transactionalOperator,
+            ReviewMapper mapper,
+            ReadThroughCache<Integer, List<Review>> reviewCache,
+            @Value("${app.maxPageSize:100}") int maxPageSize
+    ) {
+        this.serviceUtil = serviceUtil;
+        this.repository = repository;
+        this.databaseClient = databaseClient;
+        this.transactionalOperator = transactionalOperator;
+        this.mapper = mapper;
+        this.reviewCache = reviewCache;
+        this.maxPageSize = maxPageSize;
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        LOG.info("Will get reviews for product with id={}", productId);
+
+        return reviewCache.get(productId, id -> repository.findByProductId(id).map(this::toApi).collectList())
+                .flatMapMany(Flux::fromIterable)
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, Integer after, int limit) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + maxPageSize);
+        }
+
+        LOG.info("Will get a page of {} reviews after reviewId={} for product with id={}", limit, after, productId);
+
+        return repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(
+                        productId, after == null ? Integer.MIN_VALUE : after, PageRequest.ofSize(limit))
+                .map(this::toApi)
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds) {
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+
+        LOG.info("Will get reviews for products with ids={}", productIds);
+
+        return reviewCache.getAll(productIds, ids -> repository.findByProductIdIn(ids).map(this::toApi).collectList()
+                        .map(reviews -> CacheConfig.byProductId(ids, reviews)))
+                .flatMapIterable(byProductId -> CacheConfig.inOrder(productIds, byProductId))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    private Review toApi(ReviewR2dbcEntity entity) {
+        Review review = mapper.r2dbcEntityToApi(entity);
+        return new Review(
+                review.productId(),
+                review.reviewId(),
+                review.author(),
+                review.subject(),
+                review.content(),
+                serviceUtil.getServiceAddress()
+        );
+    }
+
+    @Override
+    public Mono<Review> createReview(Review body) {
+        if (body.productId() < 1) {
+            throw new InvalidInputException("Invalid productId: " + body.productId());
+        }
+
+        return allocateIds(1)
+                .flatMap(id -> upsert(toEntity(body, id)))
+                // The review as stored, which is the existing one if the upsert left it as is
+                .then(Mono.defer(() -> repository.findByProductIdAndReviewId(body.productId(), body.reviewId())))
+                .switchIfEmpty(Mono.error(() -> new NotFoundException(
+                        String.format("Review %d/%d was deleted while being created", body.productId(), body.reviewId()))))
+                .doOnTerminate(() -> reviewCache.invalidate(body.productId()))
+                .map(mapper::r2dbcEntityToApi)
+                .doOnNext(review -> LOG.debug("createReview: created or kept the review entity: {}/{}", review.productId(), review.reviewId()))
+                .onErrorMap(DataIntegrityViolationException.class, ex -> new InvalidInputException(
+                        String.format("Duplicate key, Product Id: %d, Review Id: %d", body.productId(), body.reviewId())));
+    }
+
+    @Override
+    public Flux<Review> createReviews(List<Review> body) {
+        body.forEach(review -> {
+            if (review.productId() < 1) {
+                throw new InvalidInputException("Invalid productId: " + review.productId());
+            }
+        });
+
+        if (body.isEmpty()) {
+            return Flux.empty();
+        }
+
+        // All or none of the new reviews are created, ids are allocated up front in a transaction of their own.
+        // The reviews are returned as stored, once per key, including the existing ones that were left as is
+        return allocateIds(body.size())
+                .flatMapMany(firstId -> Flux.fromStream(IntStream.range(0, body.size())
+                                .mapToObj(index -> toEntity(body.get(index), firstId + index)))
+                        .concatMap(this::upsert)
+                        .thenMany(Flux.defer(() -> stored(body)))
+                        .as(transactionalOperator::transactional))
+                .doOnTerminate(() -> reviewCache.invalidateAll(body.stream().map(Review::productId).collect(Collectors.toSet())))
+                .map(mapper::r2dbcEntityToApi)
+                .onErrorMap(DataIntegrityViolationException.class, ex -> new InvalidInputException(
+                        String.format("Duplicate key in bulk create of %d reviews", body.size())));
+    }
+
+    private Flux<ReviewR2dbcEntity> stored(List<Review> body) {
+        Set<ReviewKey> keys = body.stream()
+                .map(review -> new ReviewKey(review.productId(), review.reviewId()))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        return repository.findByProductIdIn(keys.stream().map(ReviewKey::productId).collect(Collectors.toSet()))
+                .collectMap(ReviewKey::of)
+                .flatMapIterable(stored -> keys.stream().map(stored::get).filter(Objects::nonNull).toList());
+    }
+
+    private Mono<ReviewR2dbcEntity> upsert(ReviewR2dbcEntity entity) {
+        return repository.upsert(entity.getId(), entity.getProductId(), entity.getReviewId(), entity.getAuthor(), entity.getSubject(), entity.getContent())
+                .thenReturn(entity);
+    }
+
+    private ReviewR2dbcEntity toEntity(Review review, int id) {
+        ReviewR2dbcEntity entity = mapper.apiToR2dbcEntity(review);
+        entity.setId(id);
+        return entity;
+    }
+
+    /**
+     * Reserves {@code count} consecutive ids, returns the first one.
+     * <p>
+     * Like Hibernate's pooled optimizer, reserving blocks of {@value #ID_ALLOCATION_SIZE}: reading next_val as n hands out
+     * the ids (n - 50, n] and moves next_val on to n + 50, except for the initial value 1 which only hands out 1.
+     * LAST_INSERT_ID(expr) returns the updated value on the same connection, without a second locking read.
+     */
+    private Mono<Integer> allocateIds(int count) {
+        // Rounded up with one block to spare, as the first block after the initial value only holds id 1
+        long increment = (long) ID_ALLOCATION_SIZE * ((count + 2 * ID_ALLOCATION_SIZE - 2) / ID_ALLOCATION_SIZE);
+        return databaseClient.sql("UPDATE reviews_seq SET next_val = LAST_INSERT_ID(next_val + :increment)")
+                .bind("increment", increment)
+                .fetch()
+                .rowsUpdated()
+                .then(databaseClient.sql("SELECT LAST_INSERT_ID()")
+                        .map(row -> row.get(0, Long.class))
+                        .one())
+                .as(transactionalOperator::transactional)
+                .map(nextValue -> {
+                    long previousNextValue = nextValue - increment;
+                    return (int) Math.max(1, previousNextValue - ID_ALLOCATION_SIZE + 1);
+                });
+    }
+
+    @Override
+    public Mono<Void> deleteReviews(int productId) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
+        return repository.deleteByProductId(productId)
+                .doOnTerminate(() -> reviewCache.invalidate(productId))
+                .then();
+    }
+}
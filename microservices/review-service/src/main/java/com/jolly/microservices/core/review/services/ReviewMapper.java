@@ -2,6 +2,7 @@ package com.jolly.microservices.core.review.services;
 
 import com.jolly.microservices.api.core.review.Review;
 import com.jolly.microservices.core.review.persistence.ReviewEntity;
+import com.jolly.microservices.core.review.persistence.ReviewR2dbcEntity;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.Mappings;
@@ -27,4 +28,15 @@ public interface ReviewMapper {
     List<Review> entityListToApiList(List<ReviewEntity> entity);
 
     List<ReviewEntity> apiListToEntityList(List<Review> api);
+
+    @Mappings({
+            @Mapping(target = "serviceAddress", ignore = true)
+    })
+    Review r2dbcEntityToApi(ReviewR2dbcEntity entity);
+
+    @Mappings({
+            @Mapping(target = "id", ignore = true),
+            @Mapping(target = "version", ignore = true)
+    })
+    ReviewR2dbcEntity apiToR2dbcEntity(Review api);
 }
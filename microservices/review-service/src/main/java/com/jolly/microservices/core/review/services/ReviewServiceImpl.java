@@ -3,27 +3,39 @@ package com.jolly.microservices.core.review.services;
 import com.jolly.microservices.api.core.review.Review;
 import com.jolly.microservices.api.core.review.ReviewService;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
+import com.jolly.microservices.api.exceptions.NotFoundException;
 import com.jolly.microservices.core.review.persistence.ReviewEntity;
+import com.jolly.microservices.core.review.persistence.ReviewKey;
 import com.jolly.microservices.core.review.persistence.ReviewRepository;
+import com.jolly.microservices.util.cache.ReadThroughCache;
 import com.jolly.microservices.util.http.ServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 /**
  * @author jolly
  */
+@Profile("!r2dbc")
 @RestController
 public class ReviewServiceImpl implements ReviewService {
     private static final Logger LOG = LoggerFactory.getLogger(ReviewServiceImpl.class);
@@ -31,19 +43,25 @@ public class ReviewServiceImpl implements ReviewService {
     private final ServiceUtil serviceUtil;
     private final ReviewRepository repository;
     private final ReviewMapper mapper;
+    private final ReadThroughCache<Integer, List<Review>> reviewCache;
     private final Scheduler jdbcScheduler;
+    private final int maxPageSize;
 
     @Autowired
     public ReviewServiceImpl(
             ServiceUtil serviceUtil,
             ReviewRepository repository,
             ReviewMapper mapper,
-            @Qualifier("jdbcScheduler") Scheduler jdbcScheduler
+            ReadThroughCache<Integer, List<Review>> reviewCache,
+            @Qualifier("jdbcScheduler") Scheduler jdbcScheduler,
+            @Value("${app.maxPageSize:100}") int maxPageSize
     ) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.reviewCache = reviewCache;
         this.jdbcScheduler = jdbcScheduler;
+        this.maxPageSize = maxPageSize;
     }
 
     @Override
@@ -54,27 +72,64 @@ public class ReviewServiceImpl implements ReviewService {
 
         LOG.info("Will get reviews for product with id={}", productId);
 
-        return Mono.fromCallable(() -> internalGetReviews(productId))
+        return reviewCache.get(productId, id -> Mono.fromCallable(() -> internalGetReviews(id)).subscribeOn(jdbcScheduler))
+                .flatMapMany(Flux::fromIterable)
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    private List<Review> internalGetReviews(int productId) {
+        List<Review> list = repository.findReviewsByProductId(productId, serviceUtil.getServiceAddress());
+
+        LOG.debug("Response size: {}", list.size());
+        return list;
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId, Integer after, int limit) {
+        if (productId < 1) {
+            throw new InvalidInputException("Invalid productId: " + productId);
+        }
+
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidInputException("Invalid limit: " + limit + ", must be between 1 and " + maxPageSize);
+        }
+
+        LOG.info("Will get a page of {} reviews after reviewId={} for product with id={}", limit, after, productId);
+
+        return Mono.fromCallable(() -> internalGetReviews(productId, after == null ? Integer.MIN_VALUE : after, limit))
                 .flatMapMany(Flux::fromIterable)
                 .log(LOG.getName(), Level.FINE)
                 .subscribeOn(jdbcScheduler);
     }
 
-    private List<Review> internalGetReviews(int productId) {
-        List<ReviewEntity> entityList = repository.findByProductId(productId);
-        List<Review> list = mapper.entityListToApiList(entityList);
-        List<Review> mutatedList = new ArrayList<>();
-        list.forEach(e -> mutatedList.add(new Review(
-                e.productId(),
-                e.reviewId(),
-                e.author(),
-                e.subject(),
-                e.content(),
-                serviceUtil.getServiceAddress()
-        )));
-
-        LOG.debug("Response size: {}", mutatedList.size());
-        return mutatedList;
+    private List<Review> internalGetReviews(int productId, int after, int limit) {
+        List<Review> list = repository.findReviewsPage(productId, after, serviceUtil.getServiceAddress(), PageRequest.ofSize(limit));
+
+        LOG.debug("Response size: {}", list.size());
+        return list;
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds) {
+        productIds.forEach(productId -> {
+            if (productId < 1) {
+                throw new InvalidInputException("Invalid productId: " + productId);
+            }
+        });
+
+        LOG.info("Will get reviews for products with ids={}", productIds);
+
+        return reviewCache.getAll(productIds, ids -> Mono.fromCallable(() -> internalGetReviews(ids)).subscribeOn(jdbcScheduler)
+                        .map(reviews -> CacheConfig.byProductId(ids, reviews)))
+                .flatMapIterable(byProductId -> CacheConfig.inOrder(productIds, byProductId))
+                .log(LOG.getName(), Level.FINE);
+    }
+
+    private List<Review> internalGetReviews(Collection<Integer> productIds) {
+        List<Review> list = repository.findReviewsByProductIdIn(productIds, serviceUtil.getServiceAddress());
+
+        LOG.debug("Response size: {}", list.size());
+        return list;
     }
 
     @Override
@@ -90,12 +145,63 @@ public class ReviewServiceImpl implements ReviewService {
     private Review internalCreateReview(Review body) {
         try {
             ReviewEntity entity = mapper.apiToEntity(body);
-            ReviewEntity newEntity = repository.save(entity);
-
-            LOG.debug("createReview: created a review entity: {}/{}", body.productId(), body.reviewId());
-            return mapper.entityToApi(newEntity);
+            if (repository.upsert(entity)) {
+                LOG.debug("createReview: created a review entity: {}/{}", body.productId(), body.reviewId());
+                return mapper.entityToApi(entity);
+            }
+
+            LOG.debug("createReview: review {}/{} exists already, left as is", body.productId(), body.reviewId());
+            return repository.findByProductIdAndReviewId(body.productId(), body.reviewId())
+                    .map(mapper::entityToApi)
+                    .orElseThrow(() -> new NotFoundException(
+                            String.format("Review %d/%d was deleted while being created", body.productId(), body.reviewId())));
         } catch (DataIntegrityViolationException dive) {
             throw new InvalidInputException(String.format("Duplicate key, Product Id: %d, Review Id: %d", body.productId(), body.reviewId()));
+        } finally {
+            // Before the result is emitted, so a read after the create never gets the cached reviews from before it
+            reviewCache.invalidate(body.productId());
+        }
+    }
+
+    @Override
+    public Flux<Review> createReviews(List<Review> body) {
+        body.forEach(review -> {
+            if (review.productId() < 1) {
+                throw new InvalidInputException("Invalid productId: " + review.productId());
+            }
+        });
+
+        return Mono.fromCallable(() -> internalCreateReviews(body))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(jdbcScheduler);
+    }
+
+    private List<Review> internalCreateReviews(List<Review> body) {
+        try {
+            List<ReviewEntity> entities = body.stream().map(mapper::apiToEntity).toList();
+
+            // One transaction, with the inserts sent as JDBC batches of hibernate.jdbc.batch_size
+            List<ReviewEntity> inserted = repository.upsertAll(entities);
+
+            LOG.debug("createReviews: created {} of {} review entities", inserted.size(), entities.size());
+            if (inserted.size() == entities.size()) {
+                return mapper.entityListToApiList(entities);
+            }
+
+            // Some reviews existed already and were left as is, return them as stored
+            Set<ReviewKey> keys = entities.stream().map(ReviewKey::of).collect(Collectors.toCollection(LinkedHashSet::new));
+            Map<ReviewKey, ReviewEntity> stored = repository.findByProductIdIn(keys.stream().map(ReviewKey::productId).collect(Collectors.toSet()))
+                    .stream()
+                    .collect(Collectors.toMap(ReviewKey::of, Function.identity()));
+            return keys.stream()
+                    .map(stored::get)
+                    .filter(Objects::nonNull)
+                    .map(mapper::entityToApi)
+                    .toList();
+        } catch (DataIntegrityViolationException dive) {
+            throw new InvalidInputException(String.format("Duplicate key in bulk create of %d reviews", body.size()));
+        } finally {
+            reviewCache.invalidateAll(body.stream().map(Review::productId).collect(Collectors.toSet()));
         }
     }
 
@@ -112,6 +218,10 @@ public class ReviewServiceImpl implements ReviewService {
 
     private void internalDeleteReviews(int productId) {
         LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
-        repository.deleteAll(repository.findByProductId(productId));
+        try {
+            repository.deleteByProductId(productId);
+        } finally {
+            reviewCache.invalidate(productId);
+        }
     }
 }
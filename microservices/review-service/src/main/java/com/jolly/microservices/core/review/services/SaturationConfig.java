@@ -0,0 +1,55 @@
+package com.jolly.microservices.core.review.services;
+
+import com.jolly.microservices.util.messaging.SaturationSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * The connection pool the review writes go through, the consumer binding is paused while it is saturated.
+ * The JDBC thread pool is watched as well, see {@code ReviewServiceApplication}.
+ *
+ * @author jolly
+ */
+@Configuration
+public class SaturationConfig {
+
+    /**
+     * Connections in use, relative to the size of the connection pool. The pool is as large as the JDBC thread pool,
+     * so threads hardly ever wait for a connection and counting those would not show the pool filling up.
+     */
+    @Bean
+    @Profile("!r2dbc")
+    public SaturationSource connectionPoolSaturation(DataSource dataSource) throws SQLException {
+        HikariDataSource hikariDataSource = dataSource.unwrap(HikariDataSource.class);
+        return SaturationSource.of("connection-pool", () -> {
+            // The pool is started on the first connection
+            HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+            if (pool == null) {
+                return 0;
+            }
+            return (double) pool.getActiveConnections() / hikariDataSource.getMaximumPoolSize();
+        });
+    }
+
+    /**
+     * Pending acquires relative to the size of the R2DBC connection pool, the r2dbc profile counterpart of the above.
+     */
+    @Bean
+    @Profile("r2dbc")
+    public SaturationSource r2dbcConnectionPoolSaturation(ConnectionFactory connectionFactory) {
+        if (!(connectionFactory instanceof ConnectionPool connectionPool)) {
+            return SaturationSource.of("connection-pool", () -> 0);
+        }
+        return SaturationSource.of("connection-pool", () -> connectionPool.getMetrics()
+                .map(metrics -> (double) metrics.pendingAcquireSize() / metrics.getMaxAllocatedSize())
+                .orElse(0.0));
+    }
+}
@@ -0,0 +1,17 @@
+CREATE TABLE IF NOT EXISTS reviews (
+    id INT NOT NULL,
+    author VARCHAR(255),
+    content VARCHAR(255),
+    product_id INT NOT NULL,
+    review_id INT NOT NULL,
+    subject VARCHAR(255),
+    version INT NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE KEY reviews_unique_idx (product_id, review_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS reviews_seq (
+    next_val BIGINT
+) ENGINE = InnoDB;
+
+INSERT INTO reviews_seq (next_val) SELECT 1 FROM DUAL WHERE NOT EXISTS (SELECT * FROM reviews_seq);
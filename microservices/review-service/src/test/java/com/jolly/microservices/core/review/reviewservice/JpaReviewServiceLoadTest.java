@@ -0,0 +1,21 @@
+package com.jolly.microservices.core.review.reviewservice;
+
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * @author jolly
+ */
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.NONE,
+		properties = {
+				"spring.cloud.stream.defaultBinder=rabbit",
+				"eureka.client.enabled=false"
+		}
+)
+class JpaReviewServiceLoadTest extends ReviewServiceLoadTestBase {
+
+	@Override
+	String mode() {
+		return "jpa";
+	}
+}
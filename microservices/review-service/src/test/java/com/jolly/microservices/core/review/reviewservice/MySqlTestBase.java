@@ -21,5 +21,9 @@ public abstract class MySqlTestBase {
         registry.add("spring.datasource.username", MY_SQL_CONTAINER::getUsername);
         registry.add("spring.datasource.password", MY_SQL_CONTAINER::getPassword);
         registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("spring.r2dbc.url", () -> "r2dbc:mysql://%s:%d/%s".formatted(
+                MY_SQL_CONTAINER.getHost(), MY_SQL_CONTAINER.getMappedPort(MySQLContainer.MYSQL_PORT), MY_SQL_CONTAINER.getDatabaseName()));
+        registry.add("spring.r2dbc.username", MY_SQL_CONTAINER::getUsername);
+        registry.add("spring.r2dbc.password", MY_SQL_CONTAINER::getPassword);
     }
 }
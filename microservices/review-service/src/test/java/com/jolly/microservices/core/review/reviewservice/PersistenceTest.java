@@ -83,6 +83,47 @@ public class PersistenceTest extends MySqlTestBase {
         });
     }
 
+    @Test
+    void upsert() {
+        // An existing review is left as is
+        assertFalse(repository.upsert(new ReviewEntity(1, 2, "a2", "s2", "c2")));
+        assertEqualsReview(savedEntity, repository.findById(savedEntity.getId()).get());
+
+        assertTrue(repository.upsert(new ReviewEntity(1, 3, "a", "s", "c")));
+        MatcherAssert.assertThat(repository.findByProductId(1), hasSize(2));
+    }
+
+    @Test
+    void upsertAll() {
+        List<ReviewEntity> entities = List.of(
+                new ReviewEntity(1, 2, "a2", "s2", "c2"),
+                new ReviewEntity(1, 3, "a", "s", "c"),
+                new ReviewEntity(2, 2, "a", "s", "c"));
+
+        MatcherAssert.assertThat(repository.upsertAll(entities), hasSize(2));
+        assertEquals(3, repository.count());
+    }
+
+    @Test
+    void upsertAllInsertsReviewsGivenTwiceOnce() {
+        List<ReviewEntity> entities = List.of(
+                new ReviewEntity(1, 3, "a", "s", "c"),
+                new ReviewEntity(1, 3, "a2", "s2", "c2"));
+
+        MatcherAssert.assertThat(repository.upsertAll(entities), hasSize(1));
+        assertEquals("a", repository.findByProductIdAndReviewId(1, 3).get().getAuthor());
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    void deleteByProductId() {
+        repository.save(new ReviewEntity(1, 3, "a", "s", "c"));
+        repository.save(new ReviewEntity(2, 2, "a", "s", "c"));
+
+        assertEquals(2, repository.deleteByProductId(1));
+        assertEquals(1, repository.count());
+    }
+
     @Test
     void optimisticLockError() {
         // Store the saved entity in two separate entity objects
@@ -0,0 +1,23 @@
+package com.jolly.microservices.core.review.reviewservice;
+
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * @author jolly
+ */
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.NONE,
+		properties = {
+				"spring.cloud.stream.defaultBinder=rabbit",
+				"eureka.client.enabled=false"
+		}
+)
+@ActiveProfiles("r2dbc")
+class R2dbcReviewServiceLoadTest extends ReviewServiceLoadTestBase {
+
+	@Override
+	String mode() {
+		return "r2dbc";
+	}
+}
@@ -0,0 +1,208 @@
+package com.jolly.microservices.core.review.reviewservice;
+
+import com.jolly.microservices.api.core.review.Review;
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import com.jolly.microservices.util.messaging.DeadLetterPublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static com.jolly.microservices.api.event.Event.Type.CREATE;
+import static com.jolly.microservices.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+/**
+ * The review service with the r2dbc profile, the same operations as {@link ReviewServiceApplicationTests}.
+ *
+ * @author jolly
+ */
+@SpringBootTest(
+		webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = {
+				"spring.cloud.stream.defaultBinder=rabbit",
+				"logging.level.com.jolly=DEBUG",
+				"eureka.client.enabled=false"
+		}
+)
+@ActiveProfiles("r2dbc")
+class R2dbcReviewServiceTests extends MySqlTestBase {
+	@Autowired
+	private WebTestClient client;
+
+	@Autowired
+	private DatabaseClient databaseClient;
+
+	@Autowired
+	private ReadThroughCache<Integer, List<Review>> reviewCache;
+
+	@Autowired
+	@Qualifier("messageProcessor")
+	private Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageProcessor;
+
+	@MockBean
+	private DeadLetterPublisher deadLetterPublisher;
+
+	@BeforeEach
+	void setupDb() {
+		when(deadLetterPublisher.publish(any(), any())).thenReturn(Mono.empty());
+		databaseClient.sql("DELETE FROM reviews").then().block();
+		reviewCache.invalidateAll();
+	}
+
+	@Test
+	void getReviewsByProductId() {
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(productId, 2);
+		sendCreateReviewEvent(productId, 3);
+
+		assertEquals(3, count());
+
+		getAndVerifyReviewsByProductId("?productId=" + productId, OK)
+				.jsonPath("$.length()").isEqualTo(3)
+				.jsonPath("$[2].productId").isEqualTo(productId)
+				.jsonPath("$[2].reviewId").isEqualTo(3);
+	}
+
+	@Test
+	void getReviewsByProductIds() {
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(2, 1);
+		sendCreateReviewEvent(3, 1);
+
+		getAndVerifyReviewsByProductId("?productIds=1,2", OK)
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	void getReviewsPage() {
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(1, 3);
+		sendCreateReviewEvent(2, 1);
+
+		getAndVerifyReviewsByProductId("?productId=1&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].reviewId").isEqualTo(1)
+				.jsonPath("$[1].reviewId").isEqualTo(2);
+
+		getAndVerifyReviewsByProductId("?productId=1&limit=2&after=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(3);
+	}
+
+	@Test
+	void getReviewsInvalidParameterNegativeValue() {
+		getAndVerifyReviewsByProductId("?productId=-1", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review")
+				.jsonPath("$.message").isEqualTo("Invalid productId: -1");
+	}
+
+	@Test
+	void bulkCreateReviews() {
+		int productId = 1;
+
+		// More reviews than one block of ids holds
+		sendEvent(Event.bulkCreate(productId, reviews(productId, 1, 120)));
+
+		assertEquals(120, count());
+		assertEquals(120, (long) databaseClient.sql("SELECT COUNT(DISTINCT id) FROM reviews").map(row -> row.get(0, Long.class)).one().block());
+	}
+
+	@Test
+	void bulkCreateWithDuplicate() {
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 2);
+		sendEvent(Event.bulkCreate(productId, reviews(productId, 1, 3)));
+
+		verify(deadLetterPublisher, never()).publish(any(), any());
+		assertEquals(3, count());
+	}
+
+	@Test
+	void duplicateCreateIsNoOp() {
+		int productId = 1;
+		int reviewId = 1;
+
+		sendCreateReviewEvent(productId, reviewId);
+		assertEquals(1, count());
+
+		// Creating a review that exists, e.g. replaying its event, leaves it as is instead of failing on the duplicate key
+		sendCreateReviewEvent(productId, reviewId);
+		verify(deadLetterPublisher, never()).publish(any(), any());
+
+		assertEquals(1, count());
+	}
+
+	@Test
+	void deleteReviews() {
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		sendCreateReviewEvent(2, 1);
+		assertEquals(2, count());
+
+		sendDeleteReviewEvent(productId);
+		assertEquals(1, count());
+
+		sendDeleteReviewEvent(productId);
+	}
+
+	private long count() {
+		return databaseClient.sql("SELECT COUNT(*) FROM reviews").map(row -> row.get(0, Long.class)).one().block();
+	}
+
+	private List<Review> reviews(int productId, int fromReviewId, int toReviewId) {
+		return IntStream.rangeClosed(fromReviewId, toReviewId)
+				.mapToObj(id -> new Review(productId, id, "Author " + id, "Subject " + id, "Content " + id, "SA"))
+				.toList();
+	}
+
+	private WebTestClient.BodyContentSpec getAndVerifyReviewsByProductId(String productIdQuery, HttpStatus expectedStatus) {
+		return client.get()
+				.uri("/review" + productIdQuery)
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(expectedStatus)
+				.expectHeader().contentType(APPLICATION_JSON)
+				.expectBody();
+	}
+
+	private void sendCreateReviewEvent(int productId, int reviewId) {
+		sendEvent(new Event<>(CREATE, productId, reviews(productId, reviewId, reviewId).get(0)));
+	}
+
+	private void sendDeleteReviewEvent(int productId) {
+		sendEvent(new Event<>(DELETE, productId, null));
+	}
+
+	private void sendEvent(Event<Integer, Review> event) {
+		messageProcessor.apply(Flux.just(MessageBuilder.withPayload(event).build())).block();
+	}
+}
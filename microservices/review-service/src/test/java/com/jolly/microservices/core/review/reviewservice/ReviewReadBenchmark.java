@@ -0,0 +1,99 @@
+package com.jolly.microservices.core.review.reviewservice;
+
+import com.jolly.microservices.api.core.review.Review;
+import com.jolly.microservices.core.review.persistence.ReviewEntity;
+import com.jolly.microservices.core.review.persistence.ReviewRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
+
+/**
+ * Compares reading the reviews of a product as entities mapped to {@link Review} records, as the review service did before,
+ * with selecting them straight into records. Logs the bytes allocated and the latency per read.
+ * Run with "./gradlew :microservices:review-service:loadTest", not part of the regular tests.
+ *
+ * @author jolly
+ */
+@Tag("load")
+@DataJpaTest
+@Transactional(propagation = NOT_SUPPORTED)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class ReviewReadBenchmark extends MySqlTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewReadBenchmark.class);
+
+    private static final int PRODUCT_ID = 1;
+    private static final int REVIEWS = 50;
+    private static final int WARMUP_READS = 1_000;
+    private static final int READS = 5_000;
+    private static final String SERVICE_ADDRESS = "review/127.0.0.1:7003";
+
+    @Autowired
+    private ReviewRepository repository;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll();
+        repository.saveAll(IntStream.rangeClosed(1, REVIEWS)
+                .mapToObj(id -> new ReviewEntity(PRODUCT_ID, id, "Author " + id, "Subject " + id, "Content " + id))
+                .toList());
+    }
+
+    @Test
+    void entitiesVersusProjection() {
+        List<Review> fromEntities = measure("entities", this::readEntities);
+        List<Review> fromProjection = measure("projection", () -> repository.findReviewsByProductId(PRODUCT_ID, SERVICE_ADDRESS));
+
+        assertEquals(REVIEWS, fromProjection.size());
+        assertEquals(Set.copyOf(fromEntities), Set.copyOf(fromProjection));
+    }
+
+    /**
+     * The read path before the projection: managed entities, mapped to records, copied to set the service address.
+     */
+    private List<Review> readEntities() {
+        return repository.findByProductId(PRODUCT_ID).stream()
+                .map(entity -> new Review(entity.getProductId(), entity.getReviewId(), entity.getAuthor(), entity.getSubject(), entity.getContent(), null))
+                .map(review -> new Review(review.productId(), review.reviewId(), review.author(), review.subject(), review.content(), SERVICE_ADDRESS))
+                .toList();
+    }
+
+    private List<Review> measure(String name, Supplier<List<Review>> read) {
+        for (int i = 0; i < WARMUP_READS; i++) {
+            read.get();
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] latencies = new long[READS];
+        List<Review> result = null;
+
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < READS; i++) {
+            long startedAt = System.nanoTime();
+            result = read.get();
+            latencies[i] = System.nanoTime() - startedAt;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        Arrays.sort(latencies);
+        LOG.info("{}: {} reads of {} reviews, {} bytes allocated per read, latency p50 = {} us, p99 = {} us",
+                name, READS, REVIEWS, allocated / READS, latencies[READS / 2] / 1_000, latencies[READS * 99 / 100] / 1_000);
+        return result;
+    }
+}
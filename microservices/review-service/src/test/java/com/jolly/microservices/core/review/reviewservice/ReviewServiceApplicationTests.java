@@ -3,22 +3,41 @@ package com.jolly.microservices.core.review.reviewservice;
 import com.jolly.microservices.api.core.review.Review;
 import com.jolly.microservices.api.event.Event;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
+import com.jolly.microservices.core.review.persistence.ReviewEntity;
 import com.jolly.microservices.core.review.persistence.ReviewRepository;
+import com.jolly.microservices.util.cache.ReadThroughCache;
+import com.jolly.microservices.util.messaging.DeadLetterPublisher;
+import com.jolly.microservices.util.http.RequestDeadline;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 import static com.jolly.microservices.api.event.Event.Type.CREATE;
 import static com.jolly.microservices.api.event.Event.Type.DELETE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
@@ -37,13 +56,32 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 	@Autowired
 	private ReviewRepository repository;
 
+	@Autowired
+	private ReadThroughCache<Integer, List<Review>> reviewCache;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Autowired
 	@Qualifier("messageProcessor")
-	private Consumer<Event<Integer, Review>> messageProcessor;
+	private Function<Flux<Message<Event<Integer, Review>>>, Mono<Void>> messageProcessor;
+
+	@Autowired
+	@Qualifier("batchMessageProcessor")
+	private Consumer<List<Event<Integer, Review>>> batchMessageProcessor;
+
+	@Autowired
+	@Qualifier("reviewCacheInvalidator")
+	private Consumer<Event<Integer, Object>> reviewCacheInvalidator;
+
+	@MockBean
+	private DeadLetterPublisher deadLetterPublisher;
 
 	@BeforeEach
 	void setupDb() {
+		when(deadLetterPublisher.publish(any(), any())).thenReturn(Mono.empty());
 		repository.deleteAll();
+		reviewCache.invalidateAll();
 	}
 
 	@Test
@@ -65,7 +103,124 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 	}
 
 	@Test
-	void duplicateError() {
+	void reviewsAreCachedUntilWritten() {
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		getAndVerifyReviewsByProductId(productId, OK).jsonPath("$.length()").isEqualTo(1);
+
+		// Written around the service, so the cached reviews are returned
+		repository.save(new ReviewEntity(productId, 2, "Author 2", "Subject 2", "Content 2"));
+		getAndVerifyReviewsByProductId(productId, OK).jsonPath("$.length()").isEqualTo(1);
+		getAndVerifyReviewsByProductId("?productIds=" + productId, OK).jsonPath("$.length()").isEqualTo(1);
+
+		// Creates and deletes through the service invalidate the reviews of the product
+		sendCreateReviewEvent(productId, 3);
+		getAndVerifyReviewsByProductId(productId, OK).jsonPath("$.length()").isEqualTo(3);
+
+		sendDeleteReviewEvent(productId);
+		getAndVerifyReviewsByProductId(productId, OK).jsonPath("$.length()").isEqualTo(0);
+
+		assertTrue(meterRegistry.get("cache.gets").tags("cache", "reviews", "result", "hit").functionCounter().count() > 0);
+		assertNotNull(meterRegistry.find("cache.hit.ratio").tags("cache", "reviews").gauge());
+		assertNotNull(meterRegistry.find("cache.memory").tags("cache", "reviews").gauge());
+	}
+
+	@Test
+	void reviewsWrittenByOtherInstancesAreEvictedOnTheirEvents() {
+		int productId = 1;
+
+		sendCreateReviewEvent(productId, 1);
+		getAndVerifyReviewsByProductId(productId, OK).jsonPath("$.length()").isEqualTo(1);
+
+		// Written by another instance, which publishes the event every instance sees
+		repository.save(new ReviewEntity(productId, 2, "Author 2", "Subject 2", "Content 2"));
+		reviewCacheInvalidator.accept(new Event<>(CREATE, productId, null));
+		getAndVerifyReviewsByProductId(productId, OK).jsonPath("$.length()").isEqualTo(2);
+
+		assertTrue(meterRegistry.get("cache.invalidations").tags("cache", "reviews").counter().count() > 0);
+	}
+
+	@Test
+	void getReviewsByProductIds() {
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(2, 1);
+		sendCreateReviewEvent(3, 1);
+
+		getAndVerifyReviewsByProductId("?productIds=1,2", OK)
+				.jsonPath("$.length()").isEqualTo(3);
+	}
+
+	@Test
+	void getReviewsPage() {
+		sendCreateReviewEvent(1, 1);
+		sendCreateReviewEvent(1, 2);
+		sendCreateReviewEvent(1, 3);
+		sendCreateReviewEvent(2, 1);
+
+		getAndVerifyReviewsByProductId("?productId=1&limit=2", OK)
+				.jsonPath("$.length()").isEqualTo(2)
+				.jsonPath("$[0].reviewId").isEqualTo(1)
+				.jsonPath("$[1].reviewId").isEqualTo(2);
+
+		getAndVerifyReviewsByProductId("?productId=1&limit=2&after=2", OK)
+				.jsonPath("$.length()").isEqualTo(1)
+				.jsonPath("$[0].reviewId").isEqualTo(3);
+
+		getAndVerifyReviewsByProductId("?productId=1&limit=2&after=3", OK)
+				.jsonPath("$.length()").isEqualTo(0);
+	}
+
+	@Test
+	void getReviewsPageInvalidLimit() {
+		getAndVerifyReviewsByProductId("?productId=1&limit=0", UNPROCESSABLE_ENTITY)
+				.jsonPath("$.path").isEqualTo("/review")
+				.jsonPath("$.message").isEqualTo("Invalid limit: 0, must be between 1 and 100");
+	}
+
+	@Test
+	void getReviewsAfterDeadline() {
+		client.get()
+				.uri("/review?productId=1")
+				.header(RequestDeadline.HEADER, String.valueOf(System.currentTimeMillis() - 1000))
+				.accept(APPLICATION_JSON)
+				.exchange()
+				.expectStatus().isEqualTo(GATEWAY_TIMEOUT);
+	}
+
+	@Test
+	void bulkCreateReviews() {
+		int productId = 1;
+
+		List<Review> reviews = IntStream.rangeClosed(1, 3)
+				.mapToObj(id -> new Review(productId, id, "Author " + id, "Subject " + id, "Content " + id, "SA"))
+				.toList();
+		sendEvent(Event.bulkCreate(productId, reviews));
+
+		assertEquals(3, repository.findByProductId(productId).size());
+	}
+
+	@Test
+	void batchWithInvalidEventIsDeadLettered() {
+		sendCreateReviewEvent(1, 1);
+
+		// The duplicate of review 1/1 is a no-op, only the invalid review is dead-lettered
+		batchMessageProcessor.accept(List.of(
+				createReviewEvent(1, 2),
+				createReviewEvent(1, 1),
+				createReviewEvent(0, 1),
+				new Event<>(DELETE, 2, null),
+				createReviewEvent(2, 1),
+				createReviewEvent(1, 3)));
+
+		assertEquals(3, repository.findByProductId(1).size());
+		assertEquals(1, repository.findByProductId(2).size());
+		verify(deadLetterPublisher, times(1)).publish(argThat(event -> Integer.valueOf(0).equals(event.getKey())), any(InvalidInputException.class));
+	}
+
+	@Test
+	void duplicateCreateIsNoOp() {
 		int productId = 1;
 		int reviewId = 1;
 
@@ -75,11 +230,9 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 
 		assertEquals(1, repository.count());
 
-		InvalidInputException thrown = assertThrows(
-				InvalidInputException.class,
-				() -> sendCreateReviewEvent(productId, reviewId),
-				"Expected a InvalidInputException here!");
-		assertEquals("Duplicate key, Product Id: 1, Review Id: 1", thrown.getMessage());
+		// Creating a review that exists, e.g. replaying its event, leaves it as is instead of failing on the duplicate key
+		sendCreateReviewEvent(productId, reviewId);
+		verify(deadLetterPublisher, never()).publish(any(), any());
 
 		assertEquals(1, repository.count());
 	}
@@ -146,11 +299,19 @@ class ReviewServiceApplicationTests extends MySqlTestBase {
 	private void sendCreateReviewEvent(int productId, int reviewId) {
 		Review review = new Review(productId, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content " + reviewId, "SA");
 		Event<Integer, Review> event = new Event<>(CREATE, productId, review);
-		messageProcessor.accept(event);
+		sendEvent(event);
+	}
+
+	private Event<Integer, Review> createReviewEvent(int productId, int id) {
+		return new Event<>(CREATE, productId, new Review(productId, id, "Author " + id, "Subject " + id, "Content " + id, "SA"));
 	}
 
 	private void sendDeleteReviewEvent(int productId) {
 		Event<Integer, Review> event = new Event<>(DELETE, productId, null);
-		messageProcessor.accept(event);
+		sendEvent(event);
+	}
+
+	private void sendEvent(Event<Integer, Review> event) {
+		messageProcessor.apply(Flux.just(MessageBuilder.withPayload(event).build())).block();
 	}
 }
@@ -0,0 +1,85 @@
+package com.jolly.microservices.core.review.reviewservice;
+
+import com.jolly.microservices.api.core.review.Review;
+import com.jolly.microservices.api.core.review.ReviewService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the same load of concurrent creates and reads through the {@link ReviewService} of a persistence mode, to compare
+ * the JPA and the R2DBC implementations. The throughput of every mode run so far is logged after each mode.
+ * Run with "./gradlew :microservices:review-service:loadTest", not part of the regular tests.
+ *
+ * @author jolly
+ */
+@Tag("load")
+abstract class ReviewServiceLoadTestBase extends MySqlTestBase {
+    private static final Logger LOG = LoggerFactory.getLogger(ReviewServiceLoadTestBase.class);
+
+    private static final int PRODUCTS = 200;
+    private static final int REVIEWS_PER_PRODUCT = 10;
+    private static final int CONCURRENCY = 256;
+    private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+    private static final Map<String, String> RESULTS = new ConcurrentSkipListMap<>();
+
+    @Autowired
+    private ReviewService reviewService;
+
+    /**
+     * Name of the persistence mode in the results.
+     */
+    abstract String mode();
+
+    @Test
+    void concurrentCreatesAndReads() {
+        Flux.range(1, PRODUCTS)
+                .flatMap(productId -> reviewService.deleteReviews(productId), CONCURRENCY)
+                .blockLast(TIMEOUT);
+
+        int creates = PRODUCTS * REVIEWS_PER_PRODUCT;
+        double createsPerSecond = run("creates", creates, index -> reviewService.createReview(new Review(
+                index / REVIEWS_PER_PRODUCT + 1, index % REVIEWS_PER_PRODUCT + 1, "Author", "Subject", "Content", null)).flux());
+
+        int reads = PRODUCTS * REVIEWS_PER_PRODUCT;
+        double readsPerSecond = run("reads", reads, index -> reviewService.getReviews(index % PRODUCTS + 1)
+                .count()
+                .doOnNext(count -> assertEquals(REVIEWS_PER_PRODUCT, count))
+                .flux());
+
+        RESULTS.put(mode(), String.format("%,.0f creates/s, %,.0f reads/s", createsPerSecond, readsPerSecond));
+    }
+
+    /**
+     * Runs {@code operations} operations with up to {@value #CONCURRENCY} at a time, returns the operations per second.
+     */
+    private double run(String name, int operations, Function<Integer, Flux<?>> operation) {
+        long startedAt = System.nanoTime();
+        Long completed = Flux.range(0, operations)
+                .flatMap(operation::apply, CONCURRENCY)
+                .count()
+                .block(TIMEOUT);
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+
+        assertEquals(operations, completed);
+        LOG.info("{}: {} {} in {} s, with {} concurrent", mode(), operations, name, String.format("%.2f", seconds), CONCURRENCY);
+        return operations / seconds;
+    }
+
+    @AfterAll
+    static void logResults() {
+        RESULTS.forEach((mode, result) -> LOG.info("Load test results, {}: {}", mode, result));
+    }
+}
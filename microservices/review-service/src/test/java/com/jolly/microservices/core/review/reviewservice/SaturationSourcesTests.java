@@ -0,0 +1,87 @@
+package com.jolly.microservices.core.review.reviewservice;
+
+import com.jolly.microservices.core.review.ReviewServiceApplication;
+import com.jolly.microservices.core.review.services.SaturationConfig;
+import com.jolly.microservices.util.messaging.SaturationSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Scheduler;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author jolly
+ */
+public class SaturationSourcesTests {
+    private final SaturationConfig config = new SaturationConfig();
+
+    @Test
+    void connectionPoolSaturationIsTheShareOfActiveConnections() throws SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        HikariDataSource hikariDataSource = mock(HikariDataSource.class);
+        when(dataSource.unwrap(HikariDataSource.class)).thenReturn(hikariDataSource);
+        SaturationSource source = config.connectionPoolSaturation(dataSource);
+
+        // Not started yet
+        assertEquals(0.0, source.saturation());
+
+        HikariPoolMXBean pool = mock(HikariPoolMXBean.class);
+        when(hikariDataSource.getHikariPoolMXBean()).thenReturn(pool);
+        when(hikariDataSource.getMaximumPoolSize()).thenReturn(10);
+        when(pool.getActiveConnections()).thenReturn(8);
+        assertEquals(0.8, source.saturation(), 0.001);
+    }
+
+    @Test
+    void r2dbcConnectionPoolSaturationIsThePendingAcquiresPerConnection() {
+        ConnectionPool connectionPool = mock(ConnectionPool.class);
+        PoolMetrics metrics = mock(PoolMetrics.class);
+        when(connectionPool.getMetrics()).thenReturn(Optional.of(metrics));
+        when(metrics.pendingAcquireSize()).thenReturn(5);
+        when(metrics.getMaxAllocatedSize()).thenReturn(10);
+
+        assertEquals(0.5, config.r2dbcConnectionPoolSaturation(connectionPool).saturation(), 0.001);
+    }
+
+    @Test
+    void jdbcSchedulerSaturationIsTheFillLevelOfItsQueue() throws InterruptedException {
+        ReviewServiceApplication application = new ReviewServiceApplication(1, 4);
+        Scheduler scheduler = application.jdbcScheduler();
+        SaturationSource source = application.jdbcSchedulerSaturation();
+        assertEquals(0.0, source.saturation());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.schedule(() -> {
+            started.countDown();
+            awaitQuietly(release);
+        });
+        started.await();
+        scheduler.schedule(() -> {});
+        scheduler.schedule(() -> {});
+
+        // One thread busy and two of its four queue places taken
+        assertEquals(0.5, source.saturation(), 0.001);
+
+        release.countDown();
+        application.shutdownJdbcExecutor();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.jolly.springcloud.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sets the deadline of every routed request in the X-Request-Deadline header, as epoch millis.
+ * A deadline sent by the client is kept if it is earlier than the one given by the gateway.
+ *
+ * @author jolly
+ */
+@Component
+public class RequestDeadlineFilter implements GlobalFilter, Ordered {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestDeadlineFilter.class);
+
+    static final String HEADER = "X-Request-Deadline";
+
+    private final long requestTimeoutMillis;
+
+    @Autowired
+    public RequestDeadlineFilter(@Value("${app.requestTimeoutMillis:10000}") long requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        long deadline = System.currentTimeMillis() + requestTimeoutMillis;
+
+        String clientDeadline = exchange.getRequest().getHeaders().getFirst(HEADER);
+        if (clientDeadline != null) {
+            try {
+                deadline = Math.min(deadline, Long.parseLong(clientDeadline));
+            } catch (NumberFormatException nfe) {
+                LOG.debug("Replaces an invalid {} header: {}", HEADER, clientDeadline);
+            }
+        }
+
+        String header = String.valueOf(deadline);
+        return chain.filter(exchange.mutate()
+                .request(request -> request.headers(headers -> headers.set(HEADER, header)))
+                .build());
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
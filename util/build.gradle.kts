@@ -15,12 +15,21 @@ repositories {
 }
 
 val springBootVersion by extra { "3.1.2" }
+val springCloudVersion by extra { "2022.0.4" }
 
 dependencies {
 	implementation(platform("org.springframework.boot:spring-boot-dependencies:${springBootVersion}"))
 
 	implementation(project(":api"))
 	implementation("org.springframework.boot:spring-boot-starter-webflux")
+	implementation("com.github.ben-manes.caffeine:caffeine")
+	implementation("io.micrometer:micrometer-core")
+	implementation("org.springframework.boot:spring-boot-actuator")
+
+	implementation(platform("org.springframework.cloud:spring-cloud-dependencies:${springCloudVersion}"))
+	implementation("org.springframework.cloud:spring-cloud-stream")
+	implementation("org.springframework.amqp:spring-rabbit")
+	implementation("org.springframework.kafka:spring-kafka")
 
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 	testImplementation("io.projectreactor:reactor-test")
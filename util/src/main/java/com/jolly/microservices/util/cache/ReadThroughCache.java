@@ -0,0 +1,183 @@
+package com.jolly.microservices.util.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import com.jolly.microservices.util.http.RequestDeadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * An in-process cache in front of a repository, bounded in size and time. Values are loaded on a miss, concurrent lookups
+ * of a key share a single load, and empty or failed loads are not cached.
+ * <p>
+ * The service invalidates the keys it writes. Writes made by other instances are evicted on their events, see
+ * {@link #evict(Object)}, which may arrive before the other instance has applied them. Values loaded shortly after such
+ * an eviction may therefore still be the old ones, they only live for expireAfterInvalidation instead of expireAfterWrite.
+ * <p>
+ * A load is shared by the callers of its keys and runs detached from them: it is given the context of the caller that
+ * started it without the request deadline, each caller waits for it until its own deadline, and a caller giving up does
+ * not cancel it. A load that has not completed within loadTimeout is cancelled instead, so loads nobody waits for any
+ * longer do not hold on to the connections of the repository.
+ * <p>
+ * Published as the Caffeine cache metrics tagged with the name of the cache, e.g. {@code cache.gets}, with the gauge
+ * {@code cache.hit.ratio} and the counter {@code cache.invalidations} in addition, and the gauge {@code cache.memory}
+ * when bounded by the estimated size of the values.
+ *
+ * @author jolly
+ */
+public class ReadThroughCache<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(ReadThroughCache.class);
+
+    private final String name;
+    private final AsyncCache<K, V> cache;
+    private final Cache<K, Boolean> recentlyInvalidated;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterInvalidationNanos;
+    private final Duration loadTimeout;
+    private final Counter invalidations;
+
+    /**
+     * A cache of at most maximumSize values.
+     */
+    public ReadThroughCache(String name, MeterRegistry meterRegistry, long maximumSize,
+                            Duration expireAfterWrite, Duration expireAfterInvalidation, Duration loadTimeout) {
+        this(name, meterRegistry, maximumSize, null, expireAfterWrite, expireAfterInvalidation, loadTimeout);
+    }
+
+    /**
+     * A cache of values estimated at up to maximumSizeBytes in total.
+     *
+     * @param estimateSize the estimated size of a value in bytes
+     */
+    public ReadThroughCache(String name, MeterRegistry meterRegistry, long maximumSizeBytes, ToIntFunction<V> estimateSize,
+                            Duration expireAfterWrite, Duration expireAfterInvalidation, Duration loadTimeout) {
+        LOG.info("Creates a {} cache with maximumSize = {}{}, expireAfterWrite = {}, expireAfterInvalidation = {}, loadTimeout = {}",
+                name, maximumSizeBytes, estimateSize == null ? "" : " bytes", expireAfterWrite, expireAfterInvalidation, loadTimeout);
+        this.name = name;
+        this.loadTimeout = loadTimeout;
+        this.expireAfterWriteNanos = expireAfterWrite.toNanos();
+        this.expireAfterInvalidationNanos = expireAfterInvalidation.toNanos();
+        this.recentlyInvalidated = Caffeine.newBuilder()
+                .expireAfterWrite(expireAfterInvalidation)
+                .build();
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder();
+        if (estimateSize == null) {
+            builder.maximumSize(maximumSizeBytes);
+        } else {
+            builder.maximumWeight(maximumSizeBytes).weigher((K key, V value) -> estimateSize.applyAsInt(value));
+        }
+        this.cache = builder
+                .expireAfter(new Expiry<K, V>() {
+                    @Override
+                    public long expireAfterCreate(K key, V value, long currentTime) {
+                        return timeToLive(key);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+                        return timeToLive(key);
+                    }
+
+                    @Override
+                    public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.synchronous().stats().hitRate())
+                .description("Share of the cache lookups that were hits")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("cache.invalidations")
+                .description("Number of entries evicted by events of other instances")
+                .tag("cache", name)
+                .register(meterRegistry);
+        if (estimateSize != null) {
+            Gauge.builder("cache.memory", cache, c -> c.synchronous().policy().eviction()
+                            .flatMap(eviction -> eviction.weightedSize().stream().boxed().findFirst())
+                            .orElse(0L))
+                    .description("Estimated size of the cached entries")
+                    .baseUnit("bytes")
+                    .tag("cache", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Returns the cached value, or loads it.
+     */
+    public Mono<V> get(K key, Function<K, Mono<V>> loader) {
+        return RequestDeadline.apply(Mono.deferContextual(context -> Mono.fromFuture(() -> cache.get(key,
+                (k, executor) -> detached(loader.apply(k), context)), true)));
+    }
+
+    /**
+     * Returns the cached values of the keys, loading the ones not cached with a single call. Keys the loader leaves out
+     * are not cached and are left out of the result.
+     */
+    public Mono<Map<K, V>> getAll(Collection<K> keys, Function<Set<K>, Mono<Map<K, V>>> loader) {
+        return RequestDeadline.apply(Mono.deferContextual(context -> Mono.fromFuture(() -> cache.getAll(keys,
+                (missing, executor) -> detached(loader.apply(Set.copyOf(missing)), context)), true)));
+    }
+
+    /**
+     * Starts a shared load with the context of the caller, without its deadline, bounded by loadTimeout instead.
+     */
+    private <T> CompletableFuture<T> detached(Mono<T> load, ContextView context) {
+        return load.timeout(loadTimeout)
+                .doOnError(TimeoutException.class, error -> LOG.warn("Cancels a load of the {} cache, not complete within {}", name, loadTimeout))
+                .contextWrite(RequestDeadline.remove(Context.of(context)))
+                .toFuture();
+    }
+
+    /**
+     * Evicts a key on an event, which the instance writing it may not have applied yet.
+     */
+    public void evict(K key) {
+        LOG.debug("Evicts {} from the {} cache", key, name);
+        recentlyInvalidated.put(key, Boolean.TRUE);
+        cache.synchronous().invalidate(key);
+        invalidations.increment();
+    }
+
+    public void invalidate(K key) {
+        cache.synchronous().invalidate(key);
+    }
+
+    public void invalidateAll(Collection<K> keys) {
+        cache.synchronous().invalidateAll(keys);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Values loaded while the key was recently evicted may miss the write that evicted it.
+     */
+    private long timeToLive(K key) {
+        return recentlyInvalidated.getIfPresent(key) != null ? expireAfterInvalidationNanos : expireAfterWriteNanos;
+    }
+}
@@ -1,5 +1,6 @@
 package com.jolly.microservices.util.http;
 
+import com.jolly.microservices.api.exceptions.DeadlineExceededException;
 import com.jolly.microservices.api.exceptions.InvalidInputException;
 import com.jolly.microservices.api.exceptions.NotFoundException;
 import org.slf4j.Logger;
@@ -30,6 +31,12 @@ public class GlobalControllerExceptionHandler {
         return createHttpErrorInfo(HttpStatus.UNPROCESSABLE_ENTITY, req, ex);
     }
 
+    @ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+    @ExceptionHandler(DeadlineExceededException.class)
+    public @ResponseBody HttpErrorInfo handleDeadlineExceededException(ServerHttpRequest req, DeadlineExceededException ex) {
+        return createHttpErrorInfo(HttpStatus.GATEWAY_TIMEOUT, req, ex);
+    }
+
     private HttpErrorInfo createHttpErrorInfo(HttpStatus httpStatus, ServerHttpRequest request, Exception ex) {
         final String path = request.getPath().pathWithinApplication().value();
         final String message = ex.getMessage();
@@ -0,0 +1,74 @@
+package com.jolly.microservices.util.http;
+
+import com.jolly.microservices.api.exceptions.DeadlineExceededException;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * The deadline of a request, set by the gateway in the {@value #HEADER} header as epoch millis
+ * and carried in the Reactor context while the request is processed.
+ *
+ * @author jolly
+ */
+public final class RequestDeadline {
+    public static final String HEADER = "X-Request-Deadline";
+
+    private static final String CONTEXT_KEY = RequestDeadline.class.getName();
+
+    private RequestDeadline() {
+    }
+
+    public static Context put(Context context, Instant deadline) {
+        return context.put(CONTEXT_KEY, deadline);
+    }
+
+    public static Optional<Instant> get(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    /**
+     * Returns the context without a deadline, for work shared by requests that each have their own.
+     */
+    public static Context remove(Context context) {
+        return context.delete(CONTEXT_KEY);
+    }
+
+    public static Duration remaining(Instant deadline) {
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Fails the mono with a {@link DeadlineExceededException} if it has not completed by the deadline of the request,
+     * cancelling the work that is still in progress.
+     */
+    public static <T> Mono<T> apply(Mono<T> mono) {
+        return Mono.deferContextual(context -> get(context)
+                .map(deadline -> mono.timeout(remaining(deadline), Mono.error(() -> exceeded(deadline))))
+                .orElse(mono));
+    }
+
+    /**
+     * Sends the deadline of the request along with every outgoing call,
+     * and fails calls that have not received a response by then.
+     */
+    public static ExchangeFilterFunction propagate() {
+        return (request, next) -> Mono.deferContextual(context -> get(context)
+                .map(deadline -> next.exchange(ClientRequest.from(request)
+                                .header(HEADER, String.valueOf(deadline.toEpochMilli()))
+                                .build())
+                        .timeout(remaining(deadline), Mono.error(() -> exceeded(deadline))))
+                .orElseGet(() -> next.exchange(request)));
+    }
+
+    private static DeadlineExceededException exceeded(Instant deadline) {
+        return new DeadlineExceededException("Request deadline exceeded: " + deadline);
+    }
+}
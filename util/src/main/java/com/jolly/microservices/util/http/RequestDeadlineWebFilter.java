@@ -0,0 +1,51 @@
+package com.jolly.microservices.util.http;
+
+import com.jolly.microservices.api.exceptions.DeadlineExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+/**
+ * Reads the deadline of the request from the {@value RequestDeadline#HEADER} header into the Reactor context.
+ * Requests that arrive after their deadline are rejected, and requests still in progress at their deadline
+ * are cancelled, including work queued on schedulers that has not started yet.
+ *
+ * @author jolly
+ */
+@Component
+public class RequestDeadlineWebFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestDeadlineWebFilter.class);
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String header = exchange.getRequest().getHeaders().getFirst(RequestDeadline.HEADER);
+        if (header == null) {
+            return chain.filter(exchange);
+        }
+
+        Instant deadline;
+        try {
+            deadline = Instant.ofEpochMilli(Long.parseLong(header));
+        } catch (NumberFormatException nfe) {
+            LOG.warn("Ignores an invalid {} header: {}", RequestDeadline.HEADER, header);
+            return chain.filter(exchange);
+        }
+
+        if (!deadline.isAfter(Instant.now())) {
+            LOG.debug("Rejects a request for {} that arrived after its deadline: {}", exchange.getRequest().getPath(), deadline);
+            return Mono.error(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Request deadline exceeded: " + deadline));
+        }
+
+        return RequestDeadline.apply(chain.filter(exchange))
+                .onErrorMap(DeadlineExceededException.class, ex -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, ex.getMessage(), ex))
+                .contextWrite(context -> RequestDeadline.put(context, deadline));
+    }
+}
@@ -0,0 +1,251 @@
+package com.jolly.microservices.util.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.config.BindingProperties;
+import org.springframework.cloud.stream.config.BindingServiceProperties;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Samples how far behind the consumer bindings are and how fast they consume, per partition.
+ * <p>
+ * The lag is asked from the broker: for Kafka the end offsets of the topic minus the offsets committed by the group,
+ * for Rabbit the number of messages ready in the queue of the binding, which has one partition per instance.
+ * The consumption rate is derived from the number of applied events, see {@link EventLatencyRecorder}, and the
+ * dead letter rate from the dead letters sent, see {@link DeadLetterPublisher}.
+ * <p>
+ * Published as the gauges {@code messaging.consumer.lag}, {@code messaging.consumed.rate} and
+ * {@code messaging.dead.letters.rate}, and by the {@link ConsumerStatsEndpoint}. With the test binder there is no
+ * broker to ask, so only the rates are known.
+ *
+ * @author jolly
+ */
+@Component
+public class ConsumerLagMonitor {
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerLagMonitor.class);
+    private static final String NO_PARTITION = "none";
+
+    public record BindingLag(String binder, String destination, String group, Map<String, Long> lagByPartition) {}
+
+    private final MeterRegistry meterRegistry;
+    private final BindingServiceProperties bindingServiceProperties;
+    private final ObjectProvider<KafkaAdmin> kafkaAdmin;
+    private final ObjectProvider<AmqpAdmin> amqpAdmin;
+    private final List<String> bindingNames;
+    private final Duration timeout;
+    private final Disposable refresh;
+
+    private final Map<String, AtomicLong> lagGauges = new ConcurrentHashMap<>();
+    private final Map<String, Double> consumedRates = new ConcurrentHashMap<>();
+    private final Map<String, Double> previousCounts = new HashMap<>();
+    private double previousDeadLetters;
+    private volatile double deadLetterRate;
+    private volatile Map<String, BindingLag> lags = Map.of();
+    private volatile long previousSampleAt = System.nanoTime();
+    private AdminClient kafkaAdminClient;
+
+    @Autowired
+    public ConsumerLagMonitor(
+            MeterRegistry meterRegistry,
+            BindingServiceProperties bindingServiceProperties,
+            ObjectProvider<KafkaAdmin> kafkaAdmin,
+            ObjectProvider<AmqpAdmin> amqpAdmin,
+            @Value("${app.messaging.stats.bindings:messageProcessor-in-0}") List<String> bindingNames,
+            @Value("${app.messaging.stats.refreshIntervalMillis:5000}") long refreshIntervalMillis,
+            @Value("${app.messaging.stats.brokerTimeoutMillis:2000}") long brokerTimeoutMillis
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.bindingServiceProperties = bindingServiceProperties;
+        this.kafkaAdmin = kafkaAdmin;
+        this.amqpAdmin = amqpAdmin;
+        this.bindingNames = bindingNames;
+        this.timeout = Duration.ofMillis(brokerTimeoutMillis);
+
+        Gauge.builder("messaging.dead.letters.rate", this, ConsumerLagMonitor::deadLetterRate)
+                .description("Dead letters sent per second")
+                .register(meterRegistry);
+
+        this.refresh = Flux.interval(Duration.ofMillis(refreshIntervalMillis))
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromRunnable(this::refresh)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .onErrorResume(error -> {
+                            LOG.warn("Failed to sample the consumer lag, will retry: {}", error.toString());
+                            return Mono.empty();
+                        }), 0)
+                .subscribe();
+    }
+
+    public Map<String, BindingLag> lags() {
+        return lags;
+    }
+
+    /**
+     * Messages applied per second since the previous sample, by topic and partition.
+     */
+    public Map<String, Double> consumedRates() {
+        return new TreeMap<>(consumedRates);
+    }
+
+    public double deadLetterRate() {
+        return deadLetterRate;
+    }
+
+    /**
+     * Samples the lag and the rates, called periodically.
+     */
+    public synchronized void refresh() {
+        sampleRates();
+
+        Map<String, BindingLag> sampled = new TreeMap<>();
+        for (String bindingName : bindingNames) {
+            BindingProperties binding = bindingServiceProperties.getBindingProperties(bindingName);
+            if (binding.getDestination() == null) {
+                continue;
+            }
+            String binder = binding.getBinder() != null ? binding.getBinder() : bindingServiceProperties.getDefaultBinder();
+            Map<String, Long> lagByPartition = switch (String.valueOf(binder)) {
+                case "kafka" -> kafkaLag(binding);
+                case "rabbit" -> rabbitLag(binding);
+                default -> Map.of();
+            };
+            lagByPartition.forEach((partition, lag) -> lagGauge(bindingName, partition).set(lag));
+            sampled.put(bindingName, new BindingLag(binder, binding.getDestination(), binding.getGroup(), lagByPartition));
+        }
+        lags = sampled;
+    }
+
+    private void sampleRates() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - previousSampleAt) / 1e9);
+        previousSampleAt = now;
+
+        Map<String, Double> counts = new HashMap<>();
+        for (Timer timer : meterRegistry.find("events.latency.total").timers()) {
+            String key = timer.getId().getTag("topic") + "/" + timer.getId().getTag("partition");
+            counts.merge(key, (double) timer.count(), Double::sum);
+        }
+        counts.forEach((key, count) -> {
+            double rate = (count - previousCounts.getOrDefault(key, 0.0)) / seconds;
+            if (consumedRates.put(key, rate) == null) {
+                String[] topicAndPartition = key.split("/", 2);
+                Gauge.builder("messaging.consumed.rate", consumedRates, rates -> rates.getOrDefault(key, 0.0))
+                        .description("Events applied per second")
+                        .tags(Tags.of("topic", topicAndPartition[0], "partition", topicAndPartition[1]))
+                        .register(meterRegistry);
+            }
+        });
+        previousCounts.putAll(counts);
+
+        double deadLetters = meterRegistry.find("messaging.dead.letters").counters().stream().mapToDouble(Counter::count).sum();
+        deadLetterRate = (deadLetters - previousDeadLetters) / seconds;
+        previousDeadLetters = deadLetters;
+    }
+
+    private Map<String, Long> kafkaLag(BindingProperties binding) {
+        KafkaAdmin admin = kafkaAdmin.getIfAvailable();
+        if (admin == null || binding.getGroup() == null) {
+            return Map.of();
+        }
+        try {
+            if (kafkaAdminClient == null) {
+                kafkaAdminClient = AdminClient.create(admin.getConfigurationProperties());
+            }
+            Map<TopicPartition, OffsetAndMetadata> committed = kafkaAdminClient.listConsumerGroupOffsets(binding.getGroup())
+                    .partitionsToOffsetAndMetadata()
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            Map<TopicPartition, OffsetSpec> latest = committed.keySet().stream()
+                    .filter(topicPartition -> topicPartition.topic().equals(binding.getDestination()))
+                    .collect(Collectors.toMap(topicPartition -> topicPartition, topicPartition -> OffsetSpec.latest()));
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = kafkaAdminClient.listOffsets(latest)
+                    .all()
+                    .get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+            Map<String, Long> lagByPartition = new TreeMap<>();
+            endOffsets.forEach((topicPartition, end) -> lagByPartition.put(
+                    String.valueOf(topicPartition.partition()),
+                    Math.max(0, end.offset() - committed.get(topicPartition).offset())));
+            return lagByPartition;
+        } catch (Exception ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            LOG.debug("Failed to get the Kafka lag of {}: {}", binding.getDestination(), ex.toString());
+            return Map.of();
+        }
+    }
+
+    private Map<String, Long> rabbitLag(BindingProperties binding) {
+        AmqpAdmin admin = amqpAdmin.getIfAvailable();
+        if (admin == null || binding.getGroup() == null) {
+            return Map.of();
+        }
+        // The Rabbit binder names the queue of a group <destination>.<group>, with the instance index appended when partitioned
+        String queue = binding.getDestination() + "." + binding.getGroup();
+        String partition = NO_PARTITION;
+        if (binding.getConsumer() != null && binding.getConsumer().isPartitioned()) {
+            int instanceIndex = binding.getConsumer().getInstanceIndex() >= 0
+                    ? binding.getConsumer().getInstanceIndex()
+                    : bindingServiceProperties.getInstanceIndex();
+            queue += "-" + instanceIndex;
+            partition = String.valueOf(instanceIndex);
+        }
+        try {
+            QueueInformation queueInformation = admin.getQueueInfo(queue);
+            return queueInformation == null ? Map.of() : Map.of(partition, (long) queueInformation.getMessageCount());
+        } catch (RuntimeException ex) {
+            LOG.debug("Failed to get the Rabbit lag of {}: {}", queue, ex.toString());
+            return Map.of();
+        }
+    }
+
+    private AtomicLong lagGauge(String bindingName, String partition) {
+        return lagGauges.computeIfAbsent(bindingName + "/" + partition, key -> {
+            AtomicLong lag = new AtomicLong();
+            Gauge.builder("messaging.consumer.lag", lag, AtomicLong::get)
+                    .description("Messages waiting in the broker for the binding")
+                    .tags(Tags.of("binding", bindingName, "partition", partition))
+                    .register(meterRegistry);
+            return lag;
+        });
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        refresh.dispose();
+        if (kafkaAdminClient != null) {
+            kafkaAdminClient.close(timeout);
+        }
+    }
+}
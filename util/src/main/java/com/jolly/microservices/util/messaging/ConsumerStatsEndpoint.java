@@ -0,0 +1,79 @@
+package com.jolly.microservices.util.messaging;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Actuator endpoint {@code /actuator/consumers} showing how the consumer bindings keep up: the lag per partition,
+ * events applied per second, batch sizes, processing time percentiles and dead letters.
+ * The lag and rates are sampled by the {@link ConsumerLagMonitor}, the rest comes from the meters of the processors.
+ *
+ * @author jolly
+ */
+@Component
+@Endpoint(id = "consumers")
+public class ConsumerStatsEndpoint {
+
+    public record ConsumerStats(
+            Map<String, ConsumerLagMonitor.BindingLag> bindings,
+            Map<String, Double> consumedPerSecond,
+            BatchSize batchSize,
+            Map<String, Map<String, Double>> processingMillis,
+            DeadLetters deadLetters) {}
+
+    public record BatchSize(long batches, double mean, double max) {}
+
+    public record DeadLetters(double total, double perSecond) {}
+
+    private final ConsumerLagMonitor lagMonitor;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public ConsumerStatsEndpoint(ConsumerLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.lagMonitor = lagMonitor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @ReadOperation
+    public ConsumerStats consumers() {
+        return new ConsumerStats(
+                lagMonitor.lags(),
+                lagMonitor.consumedRates(),
+                batchSize(),
+                processingMillis(),
+                new DeadLetters(
+                        meterRegistry.find("messaging.dead.letters").counters().stream().mapToDouble(counter -> counter.count()).sum(),
+                        lagMonitor.deadLetterRate()));
+    }
+
+    private BatchSize batchSize() {
+        DistributionSummary summary = meterRegistry.find("messaging.batch.size").summary();
+        return summary == null ? new BatchSize(0, 0, 0) : new BatchSize(summary.count(), summary.mean(), summary.max());
+    }
+
+    /**
+     * Percentiles of the processing time by topic and partition, e.g. {@code {"products/0": {"p50": 3.1, "p99": 12.0}}}.
+     */
+    private Map<String, Map<String, Double>> processingMillis() {
+        Map<String, Map<String, Double>> percentiles = new TreeMap<>();
+        for (Timer timer : meterRegistry.find("events.latency.processing").timers()) {
+            Map<String, Double> byPercentile = percentiles.computeIfAbsent(
+                    timer.getId().getTag("topic") + "/" + timer.getId().getTag("partition"), key -> new TreeMap<>());
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                // Keeps the highest value of the event types, the percentiles of different meters can not be merged
+                byPercentile.merge("p" + Math.round(value.percentile() * 100), value.value(TimeUnit.MILLISECONDS), Math::max);
+            }
+        }
+        return percentiles;
+    }
+}
@@ -0,0 +1,65 @@
+package com.jolly.microservices.util.messaging;
+
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.api.exceptions.EventProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Sends single events that can not be processed to a dead letter destination, for consumers that handle
+ * their own poison messages instead of leaving them to the binder, e.g. consumers of batches.
+ *
+ * @author jolly
+ */
+@Component
+public class DeadLetterPublisher {
+    private static final Logger LOG = LoggerFactory.getLogger(DeadLetterPublisher.class);
+    public static final String EXCEPTION_MESSAGE_HEADER = "x-exception-message";
+    public static final String EXCEPTION_TYPE_HEADER = "x-exception-type";
+
+    private final StreamBridge streamBridge;
+    private final MeterRegistry meterRegistry;
+    private final String bindingName;
+
+    @Autowired
+    public DeadLetterPublisher(
+            StreamBridge streamBridge,
+            MeterRegistry meterRegistry,
+            @Value("${app.messaging.deadLetterBinding:deadLetters-out-0}") String bindingName
+    ) {
+        this.streamBridge = streamBridge;
+        this.meterRegistry = meterRegistry;
+        this.bindingName = bindingName;
+    }
+
+    public Mono<Void> publish(Event<?, ?> event, Throwable error) {
+        return Mono.<Void>fromRunnable(() -> {
+                    LOG.warn("Dead-letters a {} event with key {}: {}", event.getEventType(), event.getKey(), error.toString());
+                    Message<Event<?, ?>> message = MessageBuilder.<Event<?, ?>>withPayload(event)
+                            .setHeader("partitionKey", event.getKey())
+                            .setHeader(EXCEPTION_MESSAGE_HEADER, String.valueOf(error.getMessage()))
+                            .setHeader(EXCEPTION_TYPE_HEADER, error.getClass().getName())
+                            .build();
+                    if (!streamBridge.send(bindingName, message)) {
+                        throw new EventProcessingException("Failed to send a dead letter to " + bindingName);
+                    }
+                    Counter.builder("messaging.dead.letters")
+                            .description("Number of events sent to the dead letter destination")
+                            .tag("eventType", String.valueOf(event.getEventType()))
+                            .tag("exception", error.getClass().getSimpleName())
+                            .register(meterRegistry)
+                            .increment();
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,22 @@
+package com.jolly.microservices.util.messaging;
+
+/**
+ * A consumer that can hold back the messages it receives, so that the messages it has started drain before its
+ * binding is stopped. See {@link SaturationGuard}.
+ *
+ * @author jolly
+ */
+public interface DrainableConsumer {
+
+    /**
+     * Stops starting the messages received from now on, they wait until {@link #release()}.
+     */
+    void hold();
+
+    void release();
+
+    /**
+     * Number of messages started but not yet completed.
+     */
+    long inFlight();
+}
@@ -0,0 +1,80 @@
+package com.jolly.microservices.util.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Classifies the errors of event processing as retryable or not.
+ * Errors that fail the same way on every attempt, e.g. an invalid event or a duplicate key, are not retryable and
+ * are dead-lettered at once, other errors, e.g. a lost database connection, are retried with backoff.
+ * <p>
+ * An error is not retryable if it, or one of its causes, is an instance of one of the non-retryable exception classes.
+ * The classes are matched by name, so classes that are not on the classpath of a service can be listed as well.
+ * Every classified error is counted in {@code messaging.errors}, tagged by its exception class and whether it is retryable.
+ *
+ * @author jolly
+ */
+@Component
+public class ErrorClassifier {
+    private static final Logger LOG = LoggerFactory.getLogger(ErrorClassifier.class);
+
+    static final List<String> DEFAULT_NON_RETRYABLE_EXCEPTIONS = List.of(
+            "com.jolly.microservices.api.exceptions.InvalidInputException",
+            "com.jolly.microservices.api.exceptions.EventProcessingException",
+            "com.jolly.microservices.api.exceptions.BadRequestException",
+            "com.jolly.microservices.api.exceptions.NotFoundException",
+            "org.springframework.dao.DataIntegrityViolationException",
+            "org.springframework.messaging.converter.MessageConversionException",
+            "java.lang.IllegalArgumentException",
+            "java.lang.NullPointerException");
+
+    private final Set<String> nonRetryableExceptions = new LinkedHashSet<>(DEFAULT_NON_RETRYABLE_EXCEPTIONS);
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public ErrorClassifier(
+            MeterRegistry meterRegistry,
+            @Value("${app.messaging.nonRetryableExceptions:}") List<String> nonRetryableExceptions
+    ) {
+        this.meterRegistry = meterRegistry;
+        nonRetryableExceptions.stream()
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .forEach(this.nonRetryableExceptions::add);
+        LOG.info("Classifies errors of event processing with non-retryable exceptions: {}", this.nonRetryableExceptions);
+    }
+
+    /**
+     * Classifies and counts an error, returns true if the failed attempt is worth retrying.
+     */
+    public boolean isRetryable(Throwable error) {
+        boolean retryable = !isNonRetryable(error);
+        Counter.builder("messaging.errors")
+                .description("Number of failed attempts to process an event, by exception class")
+                .tag("exception", error.getClass().getSimpleName())
+                .tag("retryable", String.valueOf(retryable))
+                .register(meterRegistry)
+                .increment();
+        return retryable;
+    }
+
+    private boolean isNonRetryable(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = (cause.getCause() == cause) ? null : cause.getCause()) {
+            for (Class<?> type = cause.getClass(); type != null; type = type.getSuperclass()) {
+                if (nonRetryableExceptions.contains(type.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,167 @@
+package com.jolly.microservices.util.messaging;
+
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.api.exceptions.EventProcessingException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Processes a batch of events with as few writes as possible.
+ * Consecutive creates are written in one bulk create, deletes are applied in between in the order they were received,
+ * so the events of one key are still applied in order.
+ * <p>
+ * If a bulk create is rejected with an error that is not retryable, see {@link ErrorClassifier}, its events are created
+ * one at a time and the events that are rejected on their own are dead-lettered, the rest of the batch is still applied.
+ * A retryable error fails the batch, so the binder redelivers it.
+ * A bulk create is expected to write all or none of its entities.
+ * <p>
+ * Events that were already processed are dropped before the batch is applied, see {@link EventDeduplicator}.
+ * Dead-lettered events are not recorded as processed, so they are applied when they are replayed.
+ * The total latency of the events of an applied batch is recorded by the {@link EventLatencyRecorder}, the messages
+ * of a batch do not carry the headers needed for the other latencies.
+ *
+ * @author jolly
+ */
+public class EventBatchProcessor<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(EventBatchProcessor.class);
+
+    private final String entityName;
+    private final Function<List<T>, Mono<Void>> create;
+    private final Function<Integer, Mono<Void>> delete;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final EventDeduplicator deduplicator;
+    private final ErrorClassifier errorClassifier;
+    private final EventLatencyRecorder latencyRecorder;
+    private final DistributionSummary batchSize;
+
+    public EventBatchProcessor(
+            String entityName,
+            Function<List<T>, Mono<Void>> create,
+            Function<Integer, Mono<Void>> delete,
+            DeadLetterPublisher deadLetterPublisher,
+            EventDeduplicator deduplicator,
+            ErrorClassifier errorClassifier,
+            EventLatencyRecorder latencyRecorder,
+            MeterRegistry meterRegistry
+    ) {
+        this.entityName = entityName;
+        this.create = create;
+        this.delete = delete;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.deduplicator = deduplicator;
+        this.errorClassifier = errorClassifier;
+        this.latencyRecorder = latencyRecorder;
+        this.batchSize = DistributionSummary.builder("messaging.batch.size")
+                .description("Number of events in the batches received")
+                .tag("entity", entityName)
+                .register(meterRegistry);
+    }
+
+    public Mono<Void> process(List<Event<Integer, T>> events) {
+        batchSize.record(events.size());
+        Set<String> eventIds = new HashSet<>();
+        Set<String> deadLettered = ConcurrentHashMap.newKeySet();
+        return Flux.fromIterable(events)
+                // Drops events processed before and repeated events within the batch
+                .filterWhen(event -> (event.getEventId() != null && !eventIds.add(event.getEventId()))
+                        ? Mono.just(false)
+                        : deduplicator.isDuplicate(event).map(duplicate -> !duplicate))
+                .collectList()
+                .flatMap(fresh -> {
+                    if (fresh.size() < events.size()) {
+                        LOG.info("Drops {} duplicate {} events of the batch", events.size() - fresh.size(), entityName);
+                    }
+                    return processFresh(fresh, deadLettered)
+                            .doOnSuccess(ignored -> fresh.forEach(latencyRecorder::applied))
+                            .then(Flux.fromIterable(fresh)
+                                    .filter(event -> event.getEventId() == null || !deadLettered.contains(event.getEventId()))
+                                    .concatMap(deduplicator::record)
+                                    .then());
+                });
+    }
+
+    private Mono<Void> processFresh(List<Event<Integer, T>> events, Set<String> deadLettered) {
+        LOG.info("Processes a batch of {} {} events", events.size(), entityName);
+
+        List<Mono<Void>> steps = new ArrayList<>();
+        List<Event<Integer, T>> creates = new ArrayList<>();
+        for (Event<Integer, T> event : events) {
+            switch (event.getEventType()) {
+                case CREATE, BULK_CREATE -> creates.add(event);
+                case DELETE -> {
+                    if (!creates.isEmpty()) {
+                        steps.add(createAll(List.copyOf(creates), deadLettered));
+                        creates.clear();
+                    }
+                    steps.add(deleteOne(event, deadLettered));
+                }
+                default -> steps.add(Mono.defer(() -> deadLetter(event, new EventProcessingException(
+                        String.format("Incorrect event type: %s, expected CREATE, BULK_CREATE or DELETE event", event.getEventType())), deadLettered)));
+            }
+        }
+        if (!creates.isEmpty()) {
+            steps.add(createAll(List.copyOf(creates), deadLettered));
+        }
+
+        return Flux.fromIterable(steps)
+                .concatMap(step -> step)
+                .then();
+    }
+
+    private Mono<Void> createAll(List<Event<Integer, T>> events, Set<String> deadLettered) {
+        if (events.size() == 1) {
+            return createOne(events.get(0), deadLettered);
+        }
+
+        return Mono.defer(() -> create.apply(events.stream().flatMap(event -> entities(event).stream()).toList()))
+                .doOnSuccess(ignored -> LOG.debug("Created the {}s of {} events in one bulk create", entityName, events.size()))
+                .onErrorResume(this::isPoison, error -> {
+                    LOG.info("Bulk create of {} {} events failed, creates them one event at a time: {}", events.size(), entityName, error.toString());
+                    return Flux.fromIterable(events)
+                            .concatMap(event -> createOne(event, deadLettered))
+                            .then();
+                });
+    }
+
+    private Mono<Void> createOne(Event<Integer, T> event, Set<String> deadLettered) {
+        return Mono.defer(() -> create.apply(entities(event)))
+                .onErrorResume(this::isPoison, error -> deadLetter(event, error, deadLettered));
+    }
+
+    private Mono<Void> deleteOne(Event<Integer, T> event, Set<String> deadLettered) {
+        return Mono.defer(() -> delete.apply(event.getKey()))
+                .onErrorResume(this::isPoison, error -> deadLetter(event, error, deadLettered));
+    }
+
+    private Mono<Void> deadLetter(Event<Integer, T> event, Throwable error, Set<String> deadLettered) {
+        if (event.getEventId() != null) {
+            deadLettered.add(event.getEventId());
+        }
+        return deadLetterPublisher.publish(event, error);
+    }
+
+    private List<T> entities(Event<Integer, T> event) {
+        List<T> entities = (event.getEventType() == Event.Type.BULK_CREATE)
+                ? event.getBulkData()
+                : (event.getData() == null) ? null : List.of(event.getData());
+        if (entities == null || entities.isEmpty()) {
+            throw new EventProcessingException(String.format("No %s in %s event with key: %s", entityName, event.getEventType(), event.getKey()));
+        }
+        return entities;
+    }
+
+    private boolean isPoison(Throwable error) {
+        return !errorClassifier.isRetryable(error);
+    }
+}
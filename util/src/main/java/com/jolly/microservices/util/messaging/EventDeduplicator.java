@@ -0,0 +1,351 @@
+package com.jolly.microservices.util.messaging;
+
+import com.jolly.microservices.api.event.Event;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Remembers the ids of the events that were processed during a time window, so a redelivered event can be dropped
+ * before it is written again.
+ * <p>
+ * The ids of the current and the previous window are kept in an in-memory index per window, as 64-bit hashes of the
+ * ids, so looking up an id never reads the disk and lookups run concurrently. Two ids with the same hash would drop the
+ * later event, with 64-bit hashes that is not expected to happen within a window. Older windows are dropped,
+ * i.e. ids are remembered for one to two windows.
+ * <p>
+ * An index holds at most maxIdsPerWindow ids, in a preallocated table of two to four times as many longs, i.e. the memory used
+ * is fixed at 16 to 32 bytes per id and window. A window that is full is rotated early, at sustained throughput
+ * above maxIdsPerWindow per window ids are therefore remembered for less than a window, at least maxIdsPerWindow ids.
+ * <p>
+ * All ids are also appended to a log on disk, one log per window. The logs are only read at startup to rebuild the
+ * indexes, so duplicates redelivered after a restart are dropped as well, which is why the directory must be set
+ * and survive restarts of the service. The ids are not forced to disk on every write; an id lost in a crash of the host
+ * only means its duplicate is passed on to the service, as it would be without deduplication.
+ *
+ * @author jolly
+ */
+@Component
+public class EventDeduplicator {
+    private static final Logger LOG = LoggerFactory.getLogger(EventDeduplicator.class);
+    private static final String LOG_FILE_PREFIX = "event-ids-";
+    private static final String LOG_FILE_SUFFIX = ".log";
+
+    private record Window(long startedAt, Path file, FileChannel channel, LongSet ids) {}
+
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxIdsPerWindow;
+    private final Path directory;
+
+    private volatile Window previous;
+    private volatile Window current;
+
+    @Autowired
+    public EventDeduplicator(
+            @Value("${app.messaging.dedupe.enabled:true}") boolean enabled,
+            @Value("${app.messaging.dedupe.windowSeconds:600}") long windowSeconds,
+            @Value("${app.messaging.dedupe.maxIdsPerWindow:200000}") int maxIdsPerWindow,
+            @Value("${app.messaging.dedupe.directory:}") String directory
+    ) throws IOException {
+        if (enabled && directory.isBlank()) {
+            throw new IllegalStateException("app.messaging.dedupe.directory must be set to a durable directory when deduplication is enabled");
+        }
+        LOG.info("Creates an event deduplicator in {} with enabled = {}, windowSeconds = {}, maxIdsPerWindow = {}",
+                directory, enabled, windowSeconds, maxIdsPerWindow);
+        this.enabled = enabled;
+        this.windowMillis = Duration.ofSeconds(windowSeconds).toMillis();
+        this.maxIdsPerWindow = maxIdsPerWindow;
+        this.directory = Path.of(directory);
+
+        if (enabled) {
+            Files.createDirectories(this.directory);
+            recover();
+        }
+    }
+
+    /**
+     * Emits true if an event with the same id was already processed, events without an id are never duplicates.
+     */
+    public Mono<Boolean> isDuplicate(Event<?, ?> event) {
+        String eventId = event.getEventId();
+        if (!enabled || eventId == null) {
+            return Mono.just(false);
+        }
+
+        return Mono.fromSupplier(() -> {
+            long hash = hash64(eventId);
+            Window window = currentWindow();
+            Window before = previous;
+            return window.ids().contains(hash) || (before != null && before.ids().contains(hash));
+        });
+    }
+
+    /**
+     * Records an event as processed. Failures to log the id on disk are logged, the event is still remembered in memory.
+     */
+    public Mono<Void> record(Event<?, ?> event) {
+        String eventId = event.getEventId();
+        if (!enabled || eventId == null) {
+            return Mono.empty();
+        }
+
+        return Mono.defer(() -> {
+            long hash = hash64(eventId);
+            Window window = currentWindow();
+            while (!window.ids().add(hash)) {
+                window = fullWindow(window);
+            }
+            Window logged = window;
+            return Mono.<Void>fromRunnable(() -> append(logged, eventId))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .onErrorResume(error -> {
+                        LOG.warn("Failed to log the id of event {}, a redelivery after a restart will not be dropped: {}", eventId, error.toString());
+                        return Mono.empty();
+                    });
+        });
+    }
+
+    private void append(Window window, String eventId) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap((eventId + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                window.channel().write(buffer);
+            }
+        } catch (IOException ioex) {
+            throw new UncheckedIOException(ioex);
+        }
+    }
+
+    private Window currentWindow() {
+        Window window = current;
+        if (window != null && System.currentTimeMillis() - window.startedAt() < windowMillis) {
+            return window;
+        }
+        synchronized (this) {
+            rotate();
+            return current;
+        }
+    }
+
+    /**
+     * Rotates the window early once it holds maxIdsPerWindow ids, returns the window to record in.
+     */
+    private synchronized Window fullWindow(Window window) {
+        if (current == window) {
+            LOG.debug("The deduplication window in {} is full after {} ids, starts a new one early", window.file(), maxIdsPerWindow);
+            try {
+                delete(previous);
+                previous = current;
+                // Log files are named by their start, a window is never started in the same millisecond as the one before
+                current = open(Math.max(System.currentTimeMillis(), window.startedAt() + 1));
+            } catch (IOException ioex) {
+                throw new UncheckedIOException(ioex);
+            }
+        }
+        return current;
+    }
+
+    private void rotate() {
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.startedAt() < windowMillis) {
+            return;
+        }
+
+        try {
+            if (current != null && now - current.startedAt() >= 2 * windowMillis) {
+                // No id was recorded for a whole window, both windows have expired
+                delete(current);
+                current = null;
+            }
+            delete(previous);
+            previous = current;
+            current = open(now);
+            LOG.debug("Starts a new deduplication window in {}", current.file());
+        } catch (IOException ioex) {
+            throw new UncheckedIOException(ioex);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().startsWith(LOG_FILE_PREFIX))
+                    .sorted(Comparator.comparingLong(EventDeduplicator::startedAt))
+                    .toList();
+        }
+
+        long now = System.currentTimeMillis();
+        for (Path file : files) {
+            long startedAt = startedAt(file);
+            if (now - startedAt >= 2 * windowMillis) {
+                Files.delete(file);
+                continue;
+            }
+            Window window = open(startedAt);
+            // Only the last maxIdsPerWindow ids of a log fit in its index, they are the most recent ones
+            long[] recent = new long[maxIdsPerWindow];
+            long count = 0;
+            try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                for (String line : (Iterable<String>) lines::iterator) {
+                    if (!line.isBlank()) {
+                        recent[(int) (count++ % maxIdsPerWindow)] = hash64(line);
+                    }
+                }
+            }
+            for (int i = 0; i < Math.min(count, maxIdsPerWindow); i++) {
+                window.ids().add(recent[i]);
+            }
+            delete(previous);
+            previous = current;
+            current = window;
+        }
+        LOG.info("Recovered {} deduplication windows from {}", (previous != null ? 1 : 0) + (current != null ? 1 : 0), directory);
+    }
+
+    private Window open(long startedAt) throws IOException {
+        Path file = directory.resolve(LOG_FILE_PREFIX + startedAt + LOG_FILE_SUFFIX);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new Window(startedAt, file, channel, new LongSet(maxIdsPerWindow));
+    }
+
+    /**
+     * The number of ids held in memory, for both windows.
+     */
+    int indexedIds() {
+        Window window = current;
+        Window before = previous;
+        return (window != null ? window.ids().size() : 0) + (before != null ? before.ids().size() : 0);
+    }
+
+    private static void delete(Window window) throws IOException {
+        if (window != null) {
+            window.channel().close();
+            Files.deleteIfExists(window.file());
+        }
+    }
+
+    private static long startedAt(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(LOG_FILE_PREFIX.length(), name.length() - LOG_FILE_SUFFIX.length()));
+        } catch (RuntimeException ex) {
+            // Not one of our logs, treat it as expired
+            return 0;
+        }
+    }
+
+    private static long hash64(String value) {
+        // FNV-1a followed by the murmur3 finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * A set of at most maxSize hashes, in an open-addressing table of twice as many longs. Hashes are only added, so
+     * adds and lookups need no lock: a slot goes from empty to a hash once, with a compare-and-set.
+     */
+    static final class LongSet {
+        private static final long EMPTY = 0;
+
+        private final AtomicLongArray table;
+        private final int mask;
+        private final int maxSize;
+        private final AtomicInteger size = new AtomicInteger();
+
+        LongSet(int maxSize) {
+            this.maxSize = maxSize;
+            int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) << 1;
+            this.table = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        boolean contains(long hash) {
+            long value = hash == EMPTY ? 1 : hash;
+            for (int i = index(value), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long slot = table.get(i);
+                if (slot == value) {
+                    return true;
+                }
+                if (slot == EMPTY) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds the hash, returns false if the set is full and the hash is not in it.
+         */
+        boolean add(long hash) {
+            long value = hash == EMPTY ? 1 : hash;
+            for (int i = index(value), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                long slot = table.get(i);
+                if (slot == value) {
+                    return true;
+                }
+                if (slot == EMPTY) {
+                    if (size.incrementAndGet() > maxSize) {
+                        size.decrementAndGet();
+                        return false;
+                    }
+                    if (table.compareAndSet(i, EMPTY, value)) {
+                        return true;
+                    }
+                    size.decrementAndGet();
+                    // Taken concurrently, look at the slot again
+                    i = (i - 1) & mask;
+                    probes--;
+                }
+            }
+            return false;
+        }
+
+        int size() {
+            return Math.min(size.get(), maxSize);
+        }
+
+        private int index(long value) {
+            return (int) (value ^ (value >>> 32)) & mask;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (Window window : new Window[] {previous, current}) {
+            if (window != null) {
+                window.channel().force(false);
+                window.channel().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.jolly.microservices.util.messaging;
+
+import com.jolly.microservices.api.event.Event;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Records where the time goes between the creation of an event and the moment it is applied, as histograms
+ * tagged by topic, partition and event type:
+ * <ul>
+ *     <li>{@code events.latency.total}, from {@link Event#getEventCreatedAt()} until the event is applied</li>
+ *     <li>{@code events.latency.broker}, from publish until the binder received the message</li>
+ *     <li>{@code events.latency.conversion}, from the binder until the processor got the deserialized event</li>
+ *     <li>{@code events.latency.wait}, waiting for earlier events of the same stripe</li>
+ *     <li>{@code events.latency.processing}, writing the event, including retries</li>
+ * </ul>
+ * The publish and receive times are carried in the {@value #PUBLISHED_AT_HEADER} and {@value #RECEIVED_AT_HEADER} headers,
+ * see {@link ReceivedAtChannelInterceptor}. Times taken on different hosts are only as accurate as their clocks are in sync.
+ *
+ * @author jolly
+ */
+@Component
+public class EventLatencyRecorder {
+    public static final String PUBLISHED_AT_HEADER = "x-published-at";
+    public static final String RECEIVED_AT_HEADER = "x-received-at";
+    static final String DISPATCHED_AT_HEADER = "x-dispatched-at";
+    private static final String PARTITION_HEADER = "scst_partition";
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public EventLatencyRecorder(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Marks a message as handed over to the processor, returns the message to process.
+     */
+    public <M> Message<M> dispatched(Message<M> message) {
+        return MessageBuilder.fromMessage(message)
+                .setHeader(DISPATCHED_AT_HEADER, System.currentTimeMillis())
+                .build();
+    }
+
+    /**
+     * Records the latencies of an event that was applied, processing started at {@code startedAt} epoch millis.
+     */
+    public void applied(Message<? extends Event<?, ?>> message, long startedAt) {
+        long now = System.currentTimeMillis();
+        MessageHeaders headers = message.getHeaders();
+        Event<?, ?> event = message.getPayload();
+        Tags tags = Tags.of(
+                "topic", topic(headers),
+                "partition", partition(headers),
+                "eventType", String.valueOf(event.getEventType()));
+
+        Long publishedAt = headers.get(PUBLISHED_AT_HEADER, Long.class);
+        Long receivedAt = headers.get(RECEIVED_AT_HEADER, Long.class);
+        Long dispatchedAt = headers.get(DISPATCHED_AT_HEADER, Long.class);
+        if (publishedAt != null && receivedAt != null) {
+            record("events.latency.broker", "Time from publish until the binder received the event", tags, receivedAt - publishedAt);
+        }
+        if (receivedAt != null && dispatchedAt != null) {
+            record("events.latency.conversion", "Time from the binder until the processor got the deserialized event", tags, dispatchedAt - receivedAt);
+        }
+        if (dispatchedAt != null) {
+            record("events.latency.wait", "Time waiting for earlier events of the same stripe", tags, startedAt - dispatchedAt);
+        }
+        record("events.latency.processing", "Time writing the event, including retries", tags, now - startedAt);
+        total(event, tags, now);
+    }
+
+    /**
+     * Records the total latency of an event that was applied without its message, e.g. in a batch.
+     */
+    public void applied(Event<?, ?> event) {
+        total(event, Tags.of("topic", "unknown", "partition", "none", "eventType", String.valueOf(event.getEventType())),
+                System.currentTimeMillis());
+    }
+
+    private void total(Event<?, ?> event, Tags tags, long now) {
+        if (event.getEventCreatedAt() != null) {
+            record("events.latency.total", "Time from the creation of the event until it was applied", tags,
+                    now - event.getEventCreatedAt().toInstant().toEpochMilli());
+        }
+    }
+
+    private void record(String name, String description, Tags tags, long millis) {
+        Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(Duration.ofMillis(Math.max(0, millis)));
+    }
+
+    private static String topic(MessageHeaders headers) {
+        Object topic = headers.get(KafkaHeaders.RECEIVED_TOPIC);
+        if (topic == null) {
+            topic = headers.get(AmqpHeaders.RECEIVED_EXCHANGE);
+        }
+        return topic != null ? topic.toString() : "unknown";
+    }
+
+    private static String partition(MessageHeaders headers) {
+        Object partition = headers.get(KafkaHeaders.RECEIVED_PARTITION);
+        if (partition == null) {
+            partition = headers.get(PARTITION_HEADER);
+        }
+        return partition != null ? partition.toString() : "none";
+    }
+}
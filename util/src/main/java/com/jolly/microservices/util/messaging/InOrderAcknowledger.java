@@ -0,0 +1,81 @@
+package com.jolly.microservices.util.messaging;
+
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Acknowledges messages in the order they were received, although they complete out of order.
+ * A message is acknowledged once it and every message received before it have completed, i.e. the acknowledged
+ * position is the lowest completed one and a crash never loses a message that was still in progress.
+ * <p>
+ * At most {@code maxPending} messages are tracked but not yet acknowledged. Tracking a further message waits until
+ * the earliest one is acknowledged, which applies backpressure to the source while a slow message holds up the rest.
+ * <p>
+ * One acknowledger tracks one stream of messages, one message at a time, e.g. with {@code concatMap}.
+ *
+ * @author jolly
+ */
+public class InOrderAcknowledger {
+
+    public record Tracked<M extends Message<?>>(long sequence, M message) {}
+
+    private final int maxPending;
+    private final Map<Long, Message<?>> completed = new HashMap<>();
+    private final Queue<Sinks.Empty<Void>> waiting = new ArrayDeque<>();
+    private long nextSequence;
+    private long nextToAcknowledge;
+
+    public InOrderAcknowledger(int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("Invalid maximum of pending messages: " + maxPending);
+        }
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Emits the tracked message once fewer than {@code maxPending} messages are pending.
+     */
+    public <M extends Message<?>> Mono<Tracked<M>> track(M message) {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> capacity;
+            synchronized (this) {
+                if (pending() < maxPending) {
+                    return Mono.just(new Tracked<>(nextSequence++, message));
+                }
+                capacity = Sinks.empty();
+                waiting.add(capacity);
+            }
+            return capacity.asMono().then(track(message));
+        });
+    }
+
+    public void completed(Tracked<?> tracked) {
+        Queue<Sinks.Empty<Void>> released = new ArrayDeque<>();
+        synchronized (this) {
+            completed.put(tracked.sequence(), tracked.message());
+            Message<?> next;
+            while ((next = completed.remove(nextToAcknowledge)) != null) {
+                // Acknowledged under the lock, so the acknowledgements are sent in order as well
+                MessageAcknowledgements.acknowledge(next);
+                nextToAcknowledge++;
+            }
+            while (pending() < maxPending && !waiting.isEmpty()) {
+                released.add(waiting.poll());
+            }
+        }
+        released.forEach(Sinks.Empty::tryEmitEmpty);
+    }
+
+    /**
+     * Number of messages received but not yet acknowledged, either in progress or waiting for an earlier message.
+     */
+    public synchronized long pending() {
+        return nextSequence - nextToAcknowledge;
+    }
+}
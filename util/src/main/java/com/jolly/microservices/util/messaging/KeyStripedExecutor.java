@@ -0,0 +1,39 @@
+package com.jolly.microservices.util.messaging;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Fans a stream out to a fixed number of stripes by the hash of a key. Each stripe runs its tasks one at a time
+ * in the order they were received, so tasks of the same key are strictly ordered while tasks of different keys
+ * that hash to different stripes run in parallel.
+ *
+ * @author jolly
+ */
+public class KeyStripedExecutor {
+    private final int stripes;
+
+    public KeyStripedExecutor(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Invalid number of stripes: " + stripes);
+        }
+        this.stripes = stripes;
+    }
+
+    /**
+     * Runs the task of every element on the stripe of its key, and emits the elements as their tasks complete.
+     */
+    public <E> Flux<E> execute(Flux<E> elements, Function<E, Object> keyOf, Function<E, Mono<Void>> task) {
+        // Exactly one group per stripe, so all groups are subscribed to and none of them can stall the others
+        return elements
+                .groupBy(element -> stripeOf(keyOf.apply(element)))
+                .flatMap(stripe -> stripe.concatMap(element -> task.apply(element).thenReturn(element)), stripes);
+    }
+
+    int stripeOf(Object key) {
+        return Math.floorMod(Objects.hashCode(key), stripes);
+    }
+}
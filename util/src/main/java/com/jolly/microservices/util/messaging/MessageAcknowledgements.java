@@ -0,0 +1,49 @@
+package com.jolly.microservices.util.messaging;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+
+import java.io.IOException;
+
+/**
+ * Acknowledges messages of bindings with manual acknowledgement, i.e. Rabbit bindings with
+ * {@code acknowledgeMode: MANUAL} and Kafka bindings with {@code ackMode: MANUAL}.
+ * Messages without acknowledgement headers, e.g. from the test binder, are left alone.
+ * <p>
+ * A failed acknowledgement, e.g. on a channel that was closed meanwhile, is logged and not thrown. The broker
+ * redelivers the message and throwing would only end the stream of the binding.
+ *
+ * @author jolly
+ */
+public final class MessageAcknowledgements {
+    private static final Logger LOG = LoggerFactory.getLogger(MessageAcknowledgements.class);
+
+    private MessageAcknowledgements() {}
+
+    public static void acknowledge(Message<?> message) {
+        Acknowledgment acknowledgment = message.getHeaders().get(KafkaHeaders.ACKNOWLEDGMENT, Acknowledgment.class);
+        if (acknowledgment != null) {
+            try {
+                acknowledgment.acknowledge();
+            } catch (RuntimeException rex) {
+                LOG.warn("Failed to acknowledge a message, it will be redelivered: {}", rex.toString());
+            }
+            return;
+        }
+
+        Channel channel = message.getHeaders().get(AmqpHeaders.CHANNEL, Channel.class);
+        Long deliveryTag = message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class);
+        if (channel != null && deliveryTag != null) {
+            try {
+                channel.basicAck(deliveryTag, false);
+            } catch (IOException | RuntimeException ex) {
+                LOG.warn("Failed to acknowledge message with delivery tag: {}, it will be redelivered: {}", deliveryTag, ex.toString());
+            }
+        }
+    }
+}
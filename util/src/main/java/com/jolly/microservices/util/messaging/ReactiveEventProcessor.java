@@ -0,0 +1,179 @@
+package com.jolly.microservices.util.messaging;
+
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.api.exceptions.EventProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Processes a stream of events without blocking a binder thread per write.
+ * The events are spread over {@code concurrency} stripes by their {@code partitionKey} header, or the key of the event
+ * when the header is missing. Each stripe processes its events one at a time, so events of the same key are applied
+ * in order while events of different keys, e.g. of one partition, are written concurrently.
+ * <p>
+ * Only retryable errors are retried, an event that fails with an error that is not retryable is dead-lettered at once,
+ * see {@link ErrorClassifier}.
+ * <p>
+ * Messages are acknowledged in the order they were received, once their event and all the events received before
+ * it are written, see {@link InOrderAcknowledger}. No more than {@code maxPending} messages are received ahead of
+ * the earliest one that is not acknowledged yet. An event that still fails after {@code maxAttempts} is
+ * dead-lettered and then counts as written. Any other error of a message, e.g. when it can not be dead-lettered,
+ * is logged and the message counts as completed as well, so that one message can not end the subscription of the binding.
+ * <p>
+ * Events that were already processed, e.g. redelivered after a crash, are dropped, see {@link EventDeduplicator}.
+ * The latencies of the applied events are recorded by the {@link EventLatencyRecorder}.
+ * <p>
+ * While held, see {@link DrainableConsumer}, received messages are not started, so the ones in flight drain.
+ *
+ * @author jolly
+ */
+public class ReactiveEventProcessor<T> implements DrainableConsumer {
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveEventProcessor.class);
+
+    private final String entityName;
+    private final Function<List<T>, Mono<Void>> create;
+    private final Function<Integer, Mono<Void>> delete;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final EventDeduplicator deduplicator;
+    private final ErrorClassifier errorClassifier;
+    private final EventLatencyRecorder latencyRecorder;
+    private final KeyStripedExecutor executor;
+    private final int maxPending;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicReference<Sinks.Empty<Void>> held = new AtomicReference<>();
+    private final Retry retry;
+
+    public ReactiveEventProcessor(
+            String entityName,
+            Function<List<T>, Mono<Void>> create,
+            Function<Integer, Mono<Void>> delete,
+            DeadLetterPublisher deadLetterPublisher,
+            EventDeduplicator deduplicator,
+            ErrorClassifier errorClassifier,
+            EventLatencyRecorder latencyRecorder,
+            int concurrency,
+            int maxPending,
+            int maxAttempts,
+            Duration backOffInitialInterval,
+            Duration backOffMaxInterval
+    ) {
+        LOG.info("Creates a reactive {} event processor with concurrency = {}, maxPending = {}, maxAttempts = {}",
+                entityName, concurrency, maxPending, maxAttempts);
+        this.entityName = entityName;
+        this.create = create;
+        this.delete = delete;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.deduplicator = deduplicator;
+        this.errorClassifier = errorClassifier;
+        this.latencyRecorder = latencyRecorder;
+        this.executor = new KeyStripedExecutor(concurrency);
+        this.maxPending = maxPending;
+        this.retry = Retry.backoff(maxAttempts - 1, backOffInitialInterval)
+                .maxBackoff(backOffMaxInterval)
+                .filter(errorClassifier::isRetryable)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    public Mono<Void> process(Flux<Message<Event<Integer, T>>> messages) {
+        return Mono.defer(() -> {
+            InOrderAcknowledger acknowledger = new InOrderAcknowledger(maxPending);
+            return executor.execute(
+                            messages.map(latencyRecorder::dispatched)
+                                    .concatMap(message -> released()
+                                            .then(acknowledger.track(message))
+                                            .doOnNext(tracked -> inFlight.incrementAndGet()), 0),
+                            tracked -> stripeKey(tracked.message()),
+                            tracked -> processMessage(tracked.message()))
+                    .doOnNext(tracked -> {
+                        acknowledger.completed(tracked);
+                        inFlight.decrementAndGet();
+                    })
+                    .then();
+        });
+    }
+
+    @Override
+    public void hold() {
+        held.compareAndSet(null, Sinks.empty());
+    }
+
+    @Override
+    public void release() {
+        Sinks.Empty<Void> released = held.getAndSet(null);
+        if (released != null) {
+            released.tryEmitEmpty();
+        }
+    }
+
+    @Override
+    public long inFlight() {
+        return inFlight.get();
+    }
+
+    private Mono<Void> released() {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> hold = held.get();
+            return hold == null ? Mono.empty() : hold.asMono();
+        });
+    }
+
+    private static Object stripeKey(Message<? extends Event<Integer, ?>> message) {
+        Object partitionKey = message.getHeaders().get("partitionKey");
+        return partitionKey != null ? partitionKey : message.getPayload().getKey();
+    }
+
+    private Mono<Void> processMessage(Message<Event<Integer, T>> message) {
+        Event<Integer, T> event = message.getPayload();
+        return deduplicator.isDuplicate(event)
+                .flatMap(duplicate -> {
+                    if (duplicate) {
+                        LOG.info("Drops duplicate {} event with id: {}", event.getEventType(), event.getEventId());
+                        return Mono.empty();
+                    }
+                    long startedAt = System.currentTimeMillis();
+                    return Mono.defer(() -> processEvent(event))
+                            .retryWhen(retry)
+                            .doOnSuccess(ignored -> latencyRecorder.applied(message, startedAt))
+                            // Only applied events are recorded, so a dead-lettered event is applied when it is replayed
+                            .then(deduplicator.record(event))
+                            .onErrorResume(error -> deadLetterPublisher.publish(event, error));
+                })
+                .onErrorResume(error -> {
+                    LOG.error("Failed to process {} event with id: {}, continues with the next message", event.getEventType(), event.getEventId(), error);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<Void> processEvent(Event<Integer, T> event) {
+        switch (event.getEventType()) {
+            case CREATE -> {
+                LOG.info("Create {} with productId: {}", entityName, event.getKey());
+                return create.apply(List.of(event.getData()));
+            }
+            case BULK_CREATE -> {
+                LOG.info("Create {} {}s with productId: {}", event.getBulkData().size(), entityName, event.getKey());
+                return create.apply(event.getBulkData());
+            }
+            case DELETE -> {
+                LOG.info("Delete {}s with productId: {}", entityName, event.getKey());
+                return delete.apply(event.getKey());
+            }
+            default -> {
+                String errorMessage = String.format("Incorrect event type: %s, expected CREATE, BULK_CREATE or DELETE event", event.getEventType());
+                LOG.warn(errorMessage);
+                return Mono.error(new EventProcessingException(errorMessage));
+            }
+        }
+    }
+}
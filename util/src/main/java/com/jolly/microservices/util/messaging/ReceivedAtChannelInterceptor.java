@@ -0,0 +1,26 @@
+package com.jolly.microservices.util.messaging;
+
+import org.springframework.integration.config.GlobalChannelInterceptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stamps the messages of the input bindings with the time the binder received them, before they are deserialized.
+ * See {@link EventLatencyRecorder}.
+ *
+ * @author jolly
+ */
+@Component
+@GlobalChannelInterceptor(patterns = "*-in-*")
+public class ReceivedAtChannelInterceptor implements ChannelInterceptor {
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        return MessageBuilder.fromMessage(message)
+                .setHeader(EventLatencyRecorder.RECEIVED_AT_HEADER, System.currentTimeMillis())
+                .build();
+    }
+}
@@ -0,0 +1,147 @@
+package com.jolly.microservices.util.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.binding.BindingsLifecycleController;
+import org.springframework.cloud.stream.binding.BindingsLifecycleController.State;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Pauses the consumer bindings while the resources they write through are saturated, so the lag builds up in the broker
+ * instead of writes being rejected and retried or dead-lettered.
+ * <p>
+ * The saturation of every {@link SaturationSource} bean is checked periodically. The bindings are paused once the highest
+ * saturation reaches the high-water mark, and resumed once it has dropped to the low-water mark.
+ * Kafka bindings pause their partitions; Rabbit bindings can not be paused, with {@code stopInsteadOfPause} they are
+ * stopped and started instead. Before they are stopped, every {@link DrainableConsumer} bean is held and the bindings are
+ * only stopped once the messages in flight have drained, so that stopping does not redeliver messages that were half
+ * written. Held messages that were not started are redelivered.
+ *
+ * @author jolly
+ */
+@Component
+public class SaturationGuard {
+    private static final Logger LOG = LoggerFactory.getLogger(SaturationGuard.class);
+
+    private final List<SaturationSource> sources;
+    private final List<DrainableConsumer> consumers;
+    private final BindingsLifecycleController bindingsController;
+    private final List<String> bindingNames;
+    private final double highWaterMark;
+    private final double lowWaterMark;
+    private final boolean stopInsteadOfPause;
+    private final Disposable check;
+
+    private volatile boolean paused;
+    private volatile boolean draining;
+
+    @Autowired
+    public SaturationGuard(
+            ObjectProvider<SaturationSource> sources,
+            ObjectProvider<DrainableConsumer> consumers,
+            BindingsLifecycleController bindingsController,
+            MeterRegistry meterRegistry,
+            @Value("${app.messaging.saturation.enabled:true}") boolean enabled,
+            @Value("${app.messaging.saturation.bindings:messageProcessor-in-0}") List<String> bindingNames,
+            @Value("${app.messaging.saturation.highWaterMark:0.8}") double highWaterMark,
+            @Value("${app.messaging.saturation.lowWaterMark:0.5}") double lowWaterMark,
+            @Value("${app.messaging.saturation.checkIntervalMillis:200}") long checkIntervalMillis,
+            @Value("${app.messaging.saturation.stopInsteadOfPause:false}") boolean stopInsteadOfPause
+    ) {
+        if (lowWaterMark > highWaterMark) {
+            throw new IllegalArgumentException("Low-water mark " + lowWaterMark + " is above the high-water mark " + highWaterMark);
+        }
+        this.sources = sources.orderedStream().toList();
+        this.consumers = consumers.orderedStream().toList();
+        this.bindingsController = bindingsController;
+        this.bindingNames = bindingNames;
+        this.highWaterMark = highWaterMark;
+        this.lowWaterMark = lowWaterMark;
+        this.stopInsteadOfPause = stopInsteadOfPause;
+
+        for (SaturationSource source : this.sources) {
+            Gauge.builder("messaging.saturation", source, SaturationSource::saturation)
+                    .description("Saturation of a resource the consumers write through, 1 when saturated")
+                    .tag("source", source.name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("messaging.consumer.paused", this, guard -> guard.paused ? 1 : 0)
+                .description("1 while the consumer bindings are paused because of saturation")
+                .register(meterRegistry);
+
+        if (enabled && !this.sources.isEmpty()) {
+            LOG.info("Guards bindings {} against saturation of {} with highWaterMark = {}, lowWaterMark = {}",
+                    bindingNames, this.sources.stream().map(SaturationSource::name).toList(), highWaterMark, lowWaterMark);
+            this.check = Flux.interval(Duration.ofMillis(checkIntervalMillis), Schedulers.single())
+                    .onBackpressureDrop()
+                    .subscribe(tick -> check());
+        } else {
+            this.check = null;
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    void check() {
+        try {
+            double saturation = sources.stream().mapToDouble(SaturationSource::saturation).max().orElse(0);
+            if (!paused && saturation >= highWaterMark) {
+                if (stopInsteadOfPause) {
+                    LOG.warn("Holds bindings {} at saturation {}, stops them once the messages in flight have drained", bindingNames, saturation);
+                    consumers.forEach(DrainableConsumer::hold);
+                    draining = true;
+                } else {
+                    LOG.warn("Pauses bindings {} at saturation {}", bindingNames, saturation);
+                    changeState(State.PAUSED);
+                }
+                paused = true;
+            } else if (draining) {
+                if (saturation <= lowWaterMark) {
+                    LOG.info("Releases bindings {} at saturation {} before they were stopped", bindingNames, saturation);
+                    consumers.forEach(DrainableConsumer::release);
+                    draining = false;
+                    paused = false;
+                } else if (consumers.stream().mapToLong(DrainableConsumer::inFlight).sum() == 0) {
+                    LOG.warn("Stops bindings {} at saturation {}", bindingNames, saturation);
+                    changeState(State.STOPPED);
+                    draining = false;
+                }
+            } else if (paused && saturation <= lowWaterMark) {
+                LOG.info("Resumes bindings {} at saturation {}", bindingNames, saturation);
+                changeState(stopInsteadOfPause ? State.STARTED : State.RESUMED);
+                consumers.forEach(DrainableConsumer::release);
+                paused = false;
+            }
+        } catch (RuntimeException ex) {
+            // Keeps checking, a failed check must not end the interval
+            LOG.warn("Failed to check saturation of bindings {}: {}", bindingNames, ex.toString());
+        }
+    }
+
+    private void changeState(State state) {
+        for (String bindingName : bindingNames) {
+            bindingsController.changeState(bindingName, state);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (check != null) {
+            check.dispose();
+        }
+    }
+}
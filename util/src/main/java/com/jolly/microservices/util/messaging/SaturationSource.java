@@ -0,0 +1,33 @@
+package com.jolly.microservices.util.messaging;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * A resource the consumers write through, e.g. a thread pool or a connection pool, that can be saturated.
+ * See {@link SaturationGuard}.
+ *
+ * @author jolly
+ */
+public interface SaturationSource {
+
+    String name();
+
+    /**
+     * Current saturation of the resource, 0 when idle and 1 or more when no more work can be taken on.
+     */
+    double saturation();
+
+    static SaturationSource of(String name, DoubleSupplier saturation) {
+        return new SaturationSource() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public double saturation() {
+                return saturation.getAsDouble();
+            }
+        };
+    }
+}
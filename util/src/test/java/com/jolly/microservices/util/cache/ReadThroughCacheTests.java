@@ -0,0 +1,136 @@
+package com.jolly.microservices.util.cache;
+
+import com.jolly.microservices.util.http.RequestDeadline;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author jolly
+ */
+public class ReadThroughCacheTests {
+    private MeterRegistry meterRegistry;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void valuesAreLoadedOnceUntilInvalidated() {
+        ReadThroughCache<Integer, String> cache = cache();
+
+        assertEquals("value 1", cache.get(1, this::load).block());
+        assertEquals("value 1", cache.get(1, this::load).block());
+        assertEquals(1, loads.get());
+
+        cache.invalidate(1);
+        assertEquals("value 1", cache.get(1, this::load).block());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void emptyLoadsAreNotCached() {
+        ReadThroughCache<Integer, String> cache = cache();
+
+        assertNull(cache.get(1, key -> Mono.<String>empty().doOnSubscribe(s -> loads.incrementAndGet())).block());
+        assertEquals("value 1", cache.get(1, this::load).block());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getAllLoadsTheMissingKeysOnceAndLeavesOutKeysNotLoaded() {
+        ReadThroughCache<Integer, String> cache = cache();
+        cache.get(1, this::load).block();
+
+        Map<Integer, String> values = cache.getAll(List.of(1, 2, 3), keys -> Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return keys.stream().filter(key -> key != 3).collect(Collectors.toMap(key -> key, key -> "value " + key));
+        })).block();
+
+        assertEquals(Map.of(1, "value 1", 2, "value 2"), values);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictionsAreCounted() {
+        ReadThroughCache<Integer, String> cache = cache();
+        cache.get(1, this::load).block();
+
+        cache.evict(1);
+        assertEquals("value 1", cache.get(1, this::load).block());
+        assertEquals(2, loads.get());
+        assertEquals(1.0, meterRegistry.get("cache.invalidations").tags("cache", "test").counter().count());
+    }
+
+    @Test
+    void weightedCachePublishesItsMemoryGauge() {
+        ReadThroughCache<Integer, String> cache = new ReadThroughCache<>("test", meterRegistry, 1000, String::length,
+                Duration.ofMinutes(10), Duration.ofSeconds(5), Duration.ofSeconds(5));
+        cache.get(1, this::load).block();
+
+        assertNotNull(meterRegistry.find("cache.hit.ratio").tags("cache", "test").gauge());
+        assertNotNull(meterRegistry.find("cache.memory").tags("cache", "test").gauge());
+    }
+
+    @Test
+    void loadIsGivenTheContextOfTheCallerWithoutItsDeadline() {
+        ReadThroughCache<Integer, String> cache = cache();
+
+        String value = cache.get(1, key -> Mono.deferContextual(context -> Mono.just(
+                        context.getOrDefault("caller", "none") + ", deadline " + RequestDeadline.get(context).isPresent())))
+                .contextWrite(context -> RequestDeadline.put(context.put("caller", "test"), Instant.now().plusSeconds(10)))
+                .block();
+
+        assertEquals("test, deadline false", value);
+    }
+
+    @Test
+    void abandonedLoadIsCancelledAfterLoadTimeout() throws InterruptedException {
+        ReadThroughCache<Integer, String> cache = new ReadThroughCache<>("test", meterRegistry, 100,
+                Duration.ofMinutes(10), Duration.ofSeconds(5), Duration.ofMillis(200));
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        // The caller gives up first, the shared load goes on until its own timeout
+        StepVerifier.create(cache.get(1, key -> Mono.<String>never().doOnCancel(() -> cancelled.set(true)))
+                        .timeout(Duration.ofMillis(50)))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+        assertFalse(cancelled.get());
+
+        Thread.sleep(500);
+        assertTrue(cancelled.get());
+        assertEquals("value 1", cache.get(1, this::load).block());
+    }
+
+    private ReadThroughCache<Integer, String> cache() {
+        return new ReadThroughCache<>("test", meterRegistry, 100, Duration.ofMinutes(10), Duration.ofSeconds(5), Duration.ofSeconds(5));
+    }
+
+    private Mono<String> load(int key) {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return "value " + key;
+        });
+    }
+}
@@ -0,0 +1,83 @@
+package com.jolly.microservices.util.messaging;
+
+import com.jolly.microservices.api.event.Event;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static com.jolly.microservices.api.event.Event.Type.DELETE;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author jolly
+ */
+public class EventDeduplicatorTests {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordedEventIsDuplicate() throws IOException {
+        EventDeduplicator deduplicator = new EventDeduplicator(true, 600, 200000, directory.toString());
+        Event<Integer, String> event = new Event<>(DELETE, 1, null);
+
+        StepVerifier.create(deduplicator.isDuplicate(event)).expectNext(false).verifyComplete();
+        StepVerifier.create(deduplicator.record(event)).verifyComplete();
+        StepVerifier.create(deduplicator.isDuplicate(event)).expectNext(true).verifyComplete();
+        StepVerifier.create(deduplicator.isDuplicate(new Event<>(DELETE, 1, null))).expectNext(false).verifyComplete();
+        deduplicator.close();
+    }
+
+    @Test
+    void recordedEventIsDuplicateAfterRestart() throws IOException {
+        EventDeduplicator deduplicator = new EventDeduplicator(true, 600, 200000, directory.toString());
+        Event<Integer, String> event = new Event<>(DELETE, 1, null);
+        StepVerifier.create(deduplicator.record(event)).verifyComplete();
+        deduplicator.close();
+
+        EventDeduplicator restarted = new EventDeduplicator(true, 600, 200000, directory.toString());
+        StepVerifier.create(restarted.isDuplicate(event)).expectNext(true).verifyComplete();
+        restarted.close();
+    }
+
+    @Test
+    void recordedEventIsForgottenAfterTwoWindows() throws IOException, InterruptedException {
+        EventDeduplicator deduplicator = new EventDeduplicator(true, 1, 200000, directory.toString());
+        Event<Integer, String> event = new Event<>(DELETE, 1, null);
+        StepVerifier.create(deduplicator.record(event)).verifyComplete();
+
+        Thread.sleep(2100);
+        StepVerifier.create(deduplicator.isDuplicate(event)).expectNext(false).verifyComplete();
+        deduplicator.close();
+    }
+
+    @Test
+    void indexIsBoundedByMaxIdsPerWindow() throws IOException {
+        EventDeduplicator deduplicator = new EventDeduplicator(true, 600, 4, directory.toString());
+        Event<Integer, String> first = new Event<>(DELETE, 0, null);
+        StepVerifier.create(deduplicator.record(first)).verifyComplete();
+        Event<Integer, String> last = first;
+        for (int i = 1; i < 20; i++) {
+            last = new Event<>(DELETE, i, null);
+            StepVerifier.create(deduplicator.record(last)).verifyComplete();
+            assertTrue(deduplicator.indexedIds() <= 8, "indexed " + deduplicator.indexedIds() + " ids");
+        }
+
+        StepVerifier.create(deduplicator.isDuplicate(last)).expectNext(true).verifyComplete();
+        StepVerifier.create(deduplicator.isDuplicate(first)).expectNext(false).verifyComplete();
+        deduplicator.close();
+
+        EventDeduplicator restarted = new EventDeduplicator(true, 600, 4, directory.toString());
+        assertTrue(restarted.indexedIds() <= 8, "indexed " + restarted.indexedIds() + " ids after restart");
+        StepVerifier.create(restarted.isDuplicate(last)).expectNext(true).verifyComplete();
+        restarted.close();
+    }
+
+    @Test
+    void directoryIsRequiredWhenEnabled() {
+        assertThrows(IllegalStateException.class, () -> new EventDeduplicator(true, 600, 200000, ""));
+    }
+}
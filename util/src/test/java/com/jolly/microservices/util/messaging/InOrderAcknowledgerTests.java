@@ -0,0 +1,70 @@
+package com.jolly.microservices.util.messaging;
+
+import com.rabbitmq.client.Channel;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author jolly
+ */
+public class InOrderAcknowledgerTests {
+    private final Channel channel = mock(Channel.class);
+
+    @Test
+    void messagesAreAcknowledgedInTheOrderReceived() throws IOException {
+        InOrderAcknowledger acknowledger = new InOrderAcknowledger(10);
+        InOrderAcknowledger.Tracked<Message<String>> first = acknowledger.track(message(1)).block();
+        InOrderAcknowledger.Tracked<Message<String>> second = acknowledger.track(message(2)).block();
+
+        acknowledger.completed(second);
+        assertEquals(2, acknowledger.pending());
+
+        acknowledger.completed(first);
+        assertEquals(0, acknowledger.pending());
+
+        InOrder acknowledgements = inOrder(channel);
+        acknowledgements.verify(channel).basicAck(1, false);
+        acknowledgements.verify(channel).basicAck(2, false);
+    }
+
+    @Test
+    void trackingWaitsWhileMaxPendingMessagesAreNotAcknowledged() {
+        InOrderAcknowledger acknowledger = new InOrderAcknowledger(2);
+        InOrderAcknowledger.Tracked<Message<String>> first = acknowledger.track(message(1)).block();
+        InOrderAcknowledger.Tracked<Message<String>> second = acknowledger.track(message(2)).block();
+
+        AtomicReference<InOrderAcknowledger.Tracked<Message<String>>> third = new AtomicReference<>();
+        Mono<InOrderAcknowledger.Tracked<Message<String>>> tracking = acknowledger.track(message(3));
+        tracking.subscribe(third::set);
+        assertNull(third.get());
+
+        // A later message completing does not make room, the earliest one is still pending
+        acknowledger.completed(second);
+        assertNull(third.get());
+
+        acknowledger.completed(first);
+        assertNotNull(third.get());
+        assertEquals(2, third.get().sequence());
+        assertEquals(1, acknowledger.pending());
+    }
+
+    private Message<String> message(long deliveryTag) {
+        return MessageBuilder.withPayload("message " + deliveryTag)
+                .setHeader(AmqpHeaders.CHANNEL, channel)
+                .setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+                .build();
+    }
+}
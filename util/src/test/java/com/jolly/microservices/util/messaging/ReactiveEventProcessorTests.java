@@ -0,0 +1,147 @@
+package com.jolly.microservices.util.messaging;
+
+import com.jolly.microservices.api.event.Event;
+import com.jolly.microservices.api.exceptions.InvalidInputException;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.jolly.microservices.api.event.Event.Type.CREATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author jolly
+ */
+public class ReactiveEventProcessorTests {
+    @TempDir
+    Path directory;
+
+    private MeterRegistry meterRegistry;
+    private DeadLetterPublisher deadLetterPublisher;
+    private List<String> created;
+    private AtomicBoolean invalid;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        deadLetterPublisher = mock(DeadLetterPublisher.class);
+        when(deadLetterPublisher.publish(any(), any())).thenReturn(Mono.empty());
+        created = new CopyOnWriteArrayList<>();
+        invalid = new AtomicBoolean(true);
+    }
+
+    @Test
+    void failedDeadLetterDoesNotEndTheStream() throws IOException {
+        when(deadLetterPublisher.publish(any(), any())).thenReturn(Mono.error(new IllegalStateException("broker down")));
+        ReactiveEventProcessor<String> processor = processor(deduplicator(false));
+
+        StepVerifier.create(processor.process(Flux.just(message(1, "invalid"), message(2, "valid"))))
+                .verifyComplete();
+
+        assertEquals(List.of("valid"), created);
+    }
+
+    @Test
+    void failedAcknowledgementDoesNotEndTheStream() throws IOException {
+        Channel channel = mock(Channel.class);
+        doThrow(new IllegalStateException("channel closed")).when(channel).basicAck(anyLong(), anyBoolean());
+        ReactiveEventProcessor<String> processor = processor(deduplicator(false));
+
+        StepVerifier.create(processor.process(Flux.just(
+                        withChannel(message(1, "first"), channel, 1),
+                        withChannel(message(2, "second"), channel, 2))))
+                .verifyComplete();
+
+        assertEquals(List.of("first", "second"), created);
+    }
+
+    @Test
+    void replayedDeadLetterIsApplied() throws IOException {
+        ReactiveEventProcessor<String> processor = processor(deduplicator(true));
+        Message<Event<Integer, String>> message = message(1, "invalid");
+
+        StepVerifier.create(processor.process(Flux.just(message))).verifyComplete();
+        assertEquals(List.of(), created);
+
+        // The cause is fixed and the event is replayed from the dead letter destination
+        invalid.set(false);
+        StepVerifier.create(processor.process(Flux.just(message))).verifyComplete();
+        assertEquals(List.of("invalid"), created);
+
+        // Once applied, a redelivery is dropped
+        StepVerifier.create(processor.process(Flux.just(message))).verifyComplete();
+        assertEquals(List.of("invalid"), created);
+    }
+
+    @Test
+    void heldProcessorDoesNotStartMessagesUntilReleased() throws IOException {
+        ReactiveEventProcessor<String> processor = processor(deduplicator(false));
+        processor.hold();
+
+        StepVerifier.create(processor.process(Flux.just(message(1, "held"))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> assertEquals(List.of(), created))
+                .then(() -> assertEquals(0, processor.inFlight()))
+                .then(processor::release)
+                .verifyComplete();
+
+        assertEquals(List.of("held"), created);
+        assertEquals(0, processor.inFlight());
+    }
+
+    private ReactiveEventProcessor<String> processor(EventDeduplicator deduplicator) {
+        return new ReactiveEventProcessor<>(
+                "test",
+                data -> invalid.get() && data.contains("invalid")
+                        ? Mono.error(new InvalidInputException("Invalid data: " + data))
+                        : Mono.fromRunnable(() -> created.addAll(data)),
+                key -> Mono.empty(),
+                deadLetterPublisher,
+                deduplicator,
+                new ErrorClassifier(meterRegistry, List.of()),
+                new EventLatencyRecorder(meterRegistry),
+                1,
+                1024,
+                3,
+                Duration.ofMillis(1),
+                Duration.ofMillis(10));
+    }
+
+    private EventDeduplicator deduplicator(boolean enabled) throws IOException {
+        return new EventDeduplicator(enabled, 600, 200000, directory.toString());
+    }
+
+    private static Message<Event<Integer, String>> message(int key, String data) {
+        return MessageBuilder.withPayload(new Event<>(CREATE, key, data)).build();
+    }
+
+    private static Message<Event<Integer, String>> withChannel(Message<Event<Integer, String>> message, Channel channel, long deliveryTag) {
+        return MessageBuilder.fromMessage(message)
+                .setHeader(AmqpHeaders.CHANNEL, channel)
+                .setHeader(AmqpHeaders.DELIVERY_TAG, deliveryTag)
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.jolly.microservices.util.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.stream.binding.BindingsLifecycleController;
+import org.springframework.cloud.stream.binding.BindingsLifecycleController.State;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author jolly
+ */
+public class SaturationGuardTests {
+    private static final String BINDING = "messageProcessor-in-0";
+
+    private BindingsLifecycleController bindingsController;
+    private DrainableConsumer consumer;
+    private double saturation;
+
+    @BeforeEach
+    void setUp() {
+        bindingsController = mock(BindingsLifecycleController.class);
+        consumer = mock(DrainableConsumer.class);
+        saturation = 0;
+    }
+
+    @Test
+    void bindingIsPausedAtHighWaterMarkAndResumedAtLowWaterMark() {
+        SaturationGuard guard = guard(false);
+
+        saturation = 0.9;
+        guard.check();
+        assertTrue(guard.isPaused());
+        verify(bindingsController).changeState(BINDING, State.PAUSED);
+
+        // Between the water marks the binding stays paused
+        saturation = 0.6;
+        guard.check();
+        assertTrue(guard.isPaused());
+        verify(bindingsController, never()).changeState(BINDING, State.RESUMED);
+
+        saturation = 0.4;
+        guard.check();
+        assertFalse(guard.isPaused());
+        verify(bindingsController).changeState(BINDING, State.RESUMED);
+    }
+
+    @Test
+    void bindingIsStoppedOnceMessagesInFlightHaveDrained() {
+        SaturationGuard guard = guard(true);
+        when(consumer.inFlight()).thenReturn(3L);
+
+        saturation = 0.9;
+        guard.check();
+        verify(consumer).hold();
+        guard.check();
+        verify(bindingsController, never()).changeState(anyString(), any());
+
+        when(consumer.inFlight()).thenReturn(0L);
+        guard.check();
+        verify(bindingsController).changeState(BINDING, State.STOPPED);
+
+        saturation = 0.4;
+        guard.check();
+        assertFalse(guard.isPaused());
+        verify(bindingsController).changeState(BINDING, State.STARTED);
+        verify(consumer).release();
+    }
+
+    @Test
+    void heldBindingIsReleasedWithoutStoppingWhenSaturationDrops() {
+        SaturationGuard guard = guard(true);
+        when(consumer.inFlight()).thenReturn(3L);
+
+        saturation = 0.9;
+        guard.check();
+        saturation = 0.4;
+        guard.check();
+
+        assertFalse(guard.isPaused());
+        verify(consumer).release();
+        verify(bindingsController, never()).changeState(anyString(), any());
+    }
+
+    @Test
+    void failingSourceDoesNotFailTheCheck() {
+        SaturationGuard guard = new SaturationGuard(provider(SaturationSource.of("failing", () -> {
+                    throw new IllegalStateException("pool closed");
+                })), provider(consumer), bindingsController, new SimpleMeterRegistry(),
+                false, List.of(BINDING), 0.8, 0.5, 200, false);
+
+        assertDoesNotThrow(guard::check);
+        assertFalse(guard.isPaused());
+    }
+
+    private SaturationGuard guard(boolean stopInsteadOfPause) {
+        // Not enabled, the tests run the checks themselves
+        return new SaturationGuard(provider(SaturationSource.of("test", () -> saturation)), provider(consumer),
+                bindingsController, new SimpleMeterRegistry(), false, List.of(BINDING), 0.8, 0.5, 200, stopInsteadOfPause);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.orderedStream()).thenAnswer(invocation -> Stream.of(bean));
+        return provider;
+    }
+}